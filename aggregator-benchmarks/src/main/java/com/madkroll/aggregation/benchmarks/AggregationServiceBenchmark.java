@@ -0,0 +1,161 @@
+package com.madkroll.aggregation.benchmarks;
+
+import com.madkroll.aggregation.config.AdaptiveBatchSettings;
+import com.madkroll.aggregation.config.BatchingServiceFactory;
+import com.madkroll.aggregation.config.DeadlineFlushSettings;
+import com.madkroll.aggregation.config.ExecutionMode;
+import com.madkroll.aggregation.config.ExecutorFactory;
+import com.madkroll.aggregation.config.ExecutorSettings;
+import com.madkroll.aggregation.dto.AggregationResponse;
+import com.madkroll.aggregation.services.*;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * Measures full aggregation of single request over three providers backed by stubbed clients.
+ * <p>
+ * Every invocation queries keys never queried before, so it's never coalesced with in-flight computations
+ * of other invocations and every query really goes through batching.
+ * When chunk size is less than batch capacity, single-threaded accumulator runs wait for batch timeout on every call,
+ * so they show linger cost rather than CPU cost. Run with more threads to see batches filled by parallel requests.
+ * Adaptive accumulator runs show linger shortened to the minimal interval between batches once arrival rate is learnt.
+ * <p>
+ * Virtual execution mode requires JDK 21+ at runtime: {@code java -jar benchmarks.jar -p executionMode=VIRTUAL}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AggregationServiceBenchmark {
+
+    private static final long BATCH_TIMEOUT_IN_MILLIS = 100;
+    private static final int RING_SIZE = 1024;
+    private static final int COMPUTATION_TIMEOUT_IN_SECONDS = 20;
+
+    @Param({"ACCUMULATOR", "DISRUPTOR", "REACTOR"})
+    private BatchingMode batchingMode;
+
+    @Param({"5", "20"})
+    private int batchCapacity;
+
+    @Param({"1", "5"})
+    private int chunkSize;
+
+    @Param({"false", "true"})
+    private boolean adaptive;
+
+    @Param({"PLATFORM"})
+    private ExecutionMode executionMode;
+
+    private final ExecutorFactory executorFactory = new ExecutorFactory();
+
+    private final List<ExecutorService> executors = new ArrayList<>();
+
+    // metrics are recorded as in production, so their overhead is measured too
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private DataProviderRegistry registry;
+
+    private AggregationService aggregationService;
+
+    // first key of the next invocation, shared by all threads
+    private final AtomicLong nextQuery = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        final Map<String, DataProvider<?>> providers = new LinkedHashMap<>();
+        providers.put("pricing", newProvider("pricing", query -> BigDecimal.ONE));
+        providers.put("track", newProvider("track", query -> "NEW"));
+        providers.put("shipments", newProvider("shipments", query -> List.of("box", "pallet")));
+        registry = new DataProviderRegistry(providers);
+
+        aggregationService = new AggregationService(
+                registry,
+                new NoResponseMapper(),
+                newExecutor("aggregation-merge"),
+                meterRegistry
+        );
+    }
+
+    @TearDown
+    public void tearDown() {
+        registry.shutdown();
+        executors.forEach(ExecutorService::shutdown);
+        executors.clear();
+    }
+
+    @Benchmark
+    public AggregationResponse computeAndMerge() {
+        return aggregationService.computeAndMerge(nextQueries()).join();
+    }
+
+    @Benchmark
+    public AggregationResponse computeAndMergeBlocking() {
+        return aggregationService.computeAndMergeBlocking(nextQueries());
+    }
+
+    /**
+     * @return chunk of distinct keys per provider, not queried by any other invocation
+     */
+    private Map<String, Set<String>> nextQueries() {
+        final long first = nextQuery.getAndAdd(chunkSize);
+        final Set<String> chunk = LongStream.range(first, first + chunkSize)
+                .mapToObj(String::valueOf)
+                .collect(Collectors.toSet());
+        return Map.of("pricing", chunk, "track", chunk, "shipments", chunk);
+    }
+
+    private <V> DataProvider<V> newProvider(final String providerName, final Function<String, V> valueByQuery) {
+        final ProviderMetrics metrics = new ProviderMetrics(meterRegistry, providerName);
+        final BatchProcessor<V> batchProcessor = new BatchProcessor<>(
+                new StubDataProviderClient<>(valueByQuery),
+                newExecutor("batch-preparation"),
+                newExecutor("response-fan-out"),
+                metrics
+        );
+        return new DataProvider<>(
+                COMPUTATION_TIMEOUT_IN_SECONDS,
+                new BatchingServiceFactory().create(
+                        batchingMode,
+                        batchCapacity,
+                        BATCH_TIMEOUT_IN_MILLIS,
+                        RING_SIZE,
+                        adaptiveSettings(),
+                        new DeadlineFlushSettings(),
+                        metrics,
+                        batchProcessor
+                ),
+                // measure batching itself, cache would serve every query after first invocation
+                ResponseCache.disabled(),
+                metrics
+        );
+    }
+
+    private AdaptiveBatchSettings adaptiveSettings() {
+        final AdaptiveBatchSettings settings = new AdaptiveBatchSettings();
+        settings.setEnabled(adaptive);
+        return settings;
+    }
+
+    private ExecutorService newExecutor(final String stageName) {
+        final ExecutorService executor = executorFactory.create(executionMode, stageName, new ExecutorSettings());
+        executors.add(executor);
+        return executor;
+    }
+}
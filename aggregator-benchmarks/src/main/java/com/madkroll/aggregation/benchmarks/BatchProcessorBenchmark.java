@@ -0,0 +1,75 @@
+package com.madkroll.aggregation.benchmarks;
+
+import com.madkroll.aggregation.config.ExecutorFactory;
+import com.madkroll.aggregation.config.ExecutorSettings;
+import com.madkroll.aggregation.services.BatchProcessor;
+import com.madkroll.aggregation.services.ProviderMetrics;
+import com.madkroll.aggregation.services.QueryComputation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures processing of single complete batch end-to-end:
+ * collecting queries, calling (stubbed) client and publishing values back into computations.
+ * <p>
+ * Computations are created per invocation, since once completed they can not be reused.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchProcessorBenchmark {
+
+    private static final int COMPUTATION_TIMEOUT_IN_SECONDS = 20;
+
+    @Param({"5", "20"})
+    private int batchCapacity;
+
+    private BatchProcessor<String> batchProcessor;
+
+    private ThreadPoolExecutor batchPreparationExecutor;
+
+    private ThreadPoolExecutor responseFanOutExecutor;
+
+    @Setup
+    public void setUp() {
+        final ExecutorFactory executorFactory = new ExecutorFactory();
+        batchPreparationExecutor = executorFactory.create("batch-preparation", new ExecutorSettings());
+        responseFanOutExecutor = executorFactory.create("response-fan-out", new ExecutorSettings());
+        batchProcessor = new BatchProcessor<>(
+                new StubDataProviderClient<>(query -> query),
+                batchPreparationExecutor,
+                responseFanOutExecutor,
+                ProviderMetrics.disabled()
+        );
+    }
+
+    @TearDown
+    public void tearDown() {
+        batchPreparationExecutor.shutdown();
+        responseFanOutExecutor.shutdown();
+    }
+
+    @Benchmark
+    public Void process() {
+        final List<QueryComputation<String>> batch = new ArrayList<>(batchCapacity);
+        for (int next = 0; next < batchCapacity; next++) {
+            batch.add(
+                    new QueryComputation<>(
+                            String.valueOf(next),
+                            new CompletableFuture<>(),
+                            COMPUTATION_TIMEOUT_IN_SECONDS
+                    )
+            );
+        }
+
+        return batchProcessor.process(batch).join();
+    }
+}
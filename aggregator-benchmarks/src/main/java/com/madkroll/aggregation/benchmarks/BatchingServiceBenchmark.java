@@ -0,0 +1,85 @@
+package com.madkroll.aggregation.benchmarks;
+
+import com.madkroll.aggregation.config.BatchingServiceFactory;
+import com.madkroll.aggregation.services.AdmissionRejectedException;
+import com.madkroll.aggregation.services.BatchingMode;
+import com.madkroll.aggregation.services.BatchingService;
+import com.madkroll.aggregation.services.QueryComputation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Measures cost of submitting single chunk of computations into batches, including sealing and handing them over.
+ * <p>
+ * Batching service is shared between benchmark threads, so with more threads they contend on the same open batch
+ * or the same ring buffer.
+ * Sealed batches are dropped, so batch processing is not part of this benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchingServiceBenchmark {
+
+    private static final long BATCH_TIMEOUT_IN_MILLIS = 1000;
+    private static final int RING_SIZE = 1024;
+    private static final int COMPUTATION_TIMEOUT_IN_SECONDS = 20;
+
+    @Param({"ACCUMULATOR", "DISRUPTOR", "REACTOR"})
+    private BatchingMode batchingMode;
+
+    @Param({"5", "20"})
+    private int batchCapacity;
+
+    @Param({"1", "3", "5"})
+    private int chunkSize;
+
+    private BatchingService<QueryComputation<String>> batchingService;
+
+    private List<QueryComputation<String>> chunk;
+
+    @Setup
+    public void setUp() {
+        batchingService = new BatchingServiceFactory().create(
+                batchingMode,
+                batchCapacity,
+                BATCH_TIMEOUT_IN_MILLIS,
+                RING_SIZE,
+                batch -> {
+                }
+        );
+
+        chunk = IntStream.range(0, chunkSize)
+                .mapToObj(
+                        next -> new QueryComputation<>(
+                                String.valueOf(next),
+                                new CompletableFuture<String>(),
+                                COMPUTATION_TIMEOUT_IN_SECONDS
+                        )
+                )
+                .collect(Collectors.toList());
+    }
+
+    @TearDown
+    public void tearDown() {
+        batchingService.shutdown();
+    }
+
+    @Benchmark
+    public void submit() {
+        for (QueryComputation<String> computation : chunk) {
+            try {
+                batchingService.submit(computation);
+            } catch (AdmissionRejectedException e) {
+                // ring buffer is full, disruptor rejects instead of waiting for a free slot
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.madkroll.aggregation.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+
+/**
+ * Runs all benchmarks once per each thread count with allocation profiling enabled.
+ * <p>
+ * Thread counts are set by system property, e.g. {@code -Dthreads=1,4,16}.
+ * Any regular JMH command line options are accepted as well, e.g. benchmark name filter or {@code -p batchCapacity=5}.
+ */
+public class BenchmarkRunner {
+
+    private static final String DEFAULT_THREADS = "1,4,8";
+
+    public static void main(String[] args) throws Exception {
+        final CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+
+        final int[] threadCounts = Arrays.stream(System.getProperty("threads", DEFAULT_THREADS).split(","))
+                .map(String::trim)
+                .mapToInt(Integer::parseInt)
+                .toArray();
+
+        for (int threads : threadCounts) {
+            new Runner(
+                    new OptionsBuilder()
+                            .parent(commandLineOptions)
+                            .threads(threads)
+                            .addProfiler(GCProfiler.class)
+                            .resultFormat(ResultFormatType.JSON)
+                            .result("jmh-result-threads-" + threads + ".json")
+                            .build()
+            ).run();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.madkroll.aggregation.benchmarks;
+
+import com.madkroll.aggregation.services.CircuitBreaker;
+import com.madkroll.aggregation.services.DataProviderClient;
+import com.madkroll.aggregation.services.HedgingPolicy;
+import com.madkroll.aggregation.services.ProviderMetrics;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Data provider client answering immediately without any network involved,
+ * so benchmarks measure only batching and aggregation overhead.
+ */
+public class StubDataProviderClient<V> extends DataProviderClient<V> {
+
+    private final Function<String, V> valueByQuery;
+
+    public StubDataProviderClient(final Function<String, V> valueByQuery) {
+        super(
+                0,
+                0,
+                Duration.ZERO,
+                null,
+                null,
+                null,
+                HedgingPolicy.disabled(),
+                CircuitBreaker.disabled(),
+                ProviderMetrics.disabled()
+        );
+        this.valueByQuery = valueByQuery;
+    }
+
+    @Override
+    public Flux<Map.Entry<String, V>> streamByHttp(final Collection<String> queries, final long circuitGeneration) {
+        return Flux.fromIterable(queries)
+                .map(query -> new AbstractMap.SimpleImmutableEntry<>(query, valueByQuery.apply(query)));
+    }
+}
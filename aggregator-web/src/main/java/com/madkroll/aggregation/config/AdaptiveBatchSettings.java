@@ -0,0 +1,20 @@
+package com.madkroll.aggregation.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Adaptive batch sizing settings of single data provider, bound from providers.<name>.batch.adaptive.
+ */
+@Getter
+@Setter
+public class AdaptiveBatchSettings {
+
+    private boolean enabled = false;
+
+    // batch capacity grows up to this value once arrival rate is high
+    private int maxCapacity = 50;
+
+    // bounds backend calls, batch not expected to fill up lingers for 1 / max-batches-per-second
+    private int maxBatchesPerSecond = 20;
+}
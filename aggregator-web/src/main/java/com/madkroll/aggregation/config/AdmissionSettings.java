@@ -0,0 +1,22 @@
+package com.madkroll.aggregation.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Admission control settings of single data provider, bound from providers.<name>.admission.
+ */
+@Getter
+@Setter
+public class AdmissionSettings {
+
+    // queries in flight, fixed limit or initial one of adaptive limit
+    private int maxInFlight = 1000;
+
+    // limit follows backend latency between min and max limit
+    private boolean adaptive = false;
+
+    private int minLimit = 50;
+
+    private int maxLimit = 5000;
+}
@@ -1,9 +1,20 @@
 package com.madkroll.aggregation.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.madkroll.aggregation.web.AggregationResponseEncoder;
+import com.madkroll.aggregation.web.AggregationResponseHttpMessageConverter;
+import com.madkroll.aggregation.web.AggregationResponseWriter;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
 
 @Log4j2
 @Configuration
@@ -14,4 +25,41 @@ public class AggregationConfiguration {
         return new ObjectMapper();
     }
 
+    /**
+     * Reactive mode runs on Netty event loops, even though Tomcat is on classpath for servlet mode.
+     */
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    /**
+     * Servlet mode writes aggregation response by its own converter, ahead of the default Jackson one.
+     */
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public WebMvcConfigurer aggregationResponseConverterConfigurer(final AggregationResponseWriter writer) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void extendMessageConverters(final List<HttpMessageConverter<?>> converters) {
+                converters.add(0, new AggregationResponseHttpMessageConverter(writer));
+            }
+        };
+    }
+
+    /**
+     * Reactive mode writes aggregation response by its own encoder, custom codecs take precedence over default ones.
+     */
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    public WebFluxConfigurer aggregationResponseEncoderConfigurer(final AggregationResponseWriter writer) {
+        return new WebFluxConfigurer() {
+            @Override
+            public void configureHttpMessageCodecs(final ServerCodecConfigurer configurer) {
+                configurer.customCodecs().register(new AggregationResponseEncoder(writer));
+            }
+        };
+    }
+
 }
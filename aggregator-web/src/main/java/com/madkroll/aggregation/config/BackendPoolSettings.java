@@ -0,0 +1,38 @@
+package com.madkroll.aggregation.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Connection pool settings of single data provider backend, bound from providers.<name>.backend.pool.
+ */
+@Getter
+@Setter
+public class BackendPoolSettings {
+
+    private int maxConnections = 50;
+
+    // requests awaiting free connection, exceeding ones fail right away
+    private int pendingAcquireMaxCount = 1_000;
+
+    private long pendingAcquireTimeoutInMillis = 1_000;
+
+    // idle connections are closed after this time, zero disables
+    private int maxIdleTimeInSeconds = 30;
+
+    // connections are closed once released after this time, zero disables
+    private int maxLifeTimeInSeconds = 300;
+
+    private int connectTimeoutInMillis = 1_000;
+
+    // no bytes received for this time fails the request, zero disables
+    private int readTimeoutInSeconds = 10;
+
+    private boolean keepAlive = true;
+
+    // run on event loops shared by all providers or on dedicated ones
+    private boolean shareEventLoops = true;
+
+    // dedicated event loops only
+    private int eventLoopThreads = 1;
+}
@@ -0,0 +1,29 @@
+package com.madkroll.aggregation.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Backend settings of single data provider, bound from providers.<name>.backend.
+ */
+@Getter
+@Setter
+public class BackendSettings {
+
+    private String baseUrl;
+
+    // backend call and computation of every query are given up after this time
+    private int timeoutInSeconds = 20;
+
+    private int maxRetries = 1;
+
+    // first retry backoff, doubled by every next one
+    private long retryBackoffInMillis = 100;
+
+    // ask backend for gzip or deflate response
+    private boolean compress = true;
+
+    private BackendPoolSettings pool = new BackendPoolSettings();
+
+    private HedgingSettings hedging = new HedgingSettings();
+}
@@ -0,0 +1,27 @@
+package com.madkroll.aggregation.config;
+
+import com.madkroll.aggregation.services.BatchingMode;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Batching settings of single data provider, bound from providers.<name>.batch.
+ */
+@Getter
+@Setter
+public class BatchSettings {
+
+    private BatchingMode mode = BatchingMode.ACCUMULATOR;
+
+    private int capacity = 5;
+
+    // accumulator and reactor only: incomplete batch is sealed after this time
+    private long timeoutInMillis = 5_000;
+
+    // disruptor only: number of preallocated slots, must be power of 2
+    private int ringSize = 1_024;
+
+    private AdaptiveBatchSettings adaptive = new AdaptiveBatchSettings();
+
+    private DeadlineFlushSettings deadlineFlush = new DeadlineFlushSettings();
+}
@@ -0,0 +1,80 @@
+package com.madkroll.aggregation.config;
+
+import com.madkroll.aggregation.services.*;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+@Component
+public class BatchingServiceFactory {
+
+    /**
+     * Builds batching service of the given mode.
+     * Batch timeout applies to accumulator and reactor, ring size applies to disruptor only.
+     */
+    public <T> BatchingService<T> create(
+            final BatchingMode batchingMode,
+            final int batchCapacity,
+            final long batchTimeoutInMillis,
+            final int ringSize,
+            final Consumer<List<T>> batchConsumer
+    ) {
+        switch (batchingMode) {
+            case ACCUMULATOR:
+                return new BatchBufferingService<>(batchCapacity, batchTimeoutInMillis, batchConsumer);
+            case DISRUPTOR:
+                return new DisruptorBatchingService<>(batchCapacity, ringSize, batchConsumer);
+            case REACTOR:
+                return new ReactorBatchingService<>(
+                        batchCapacity,
+                        batchTimeoutInMillis,
+                        batch -> Mono.fromRunnable(() -> batchConsumer.accept(batch))
+                );
+            default:
+                throw new IllegalArgumentException("Unsupported batching mode: " + batchingMode);
+        }
+    }
+
+    /**
+     * Builds batching service of the given mode handing batches over to the batch processor.
+     * Reactor mode processes batches reactively, without handing them over between thread pools.
+     * Adaptive sizing and deadline-aware flush apply to accumulator only.
+     */
+    public <V> BatchingService<QueryComputation<V>> create(
+            final BatchingMode batchingMode,
+            final int batchCapacity,
+            final long batchTimeoutInMillis,
+            final int ringSize,
+            final AdaptiveBatchSettings adaptiveSettings,
+            final DeadlineFlushSettings deadlineFlushSettings,
+            final ProviderMetrics metrics,
+            final BatchProcessor<V> batchProcessor
+    ) {
+        if (batchingMode == BatchingMode.ACCUMULATOR) {
+            final BatchSizing batchSizing = adaptiveSettings.isEnabled()
+                    ? BatchSizing.adaptive(
+                            batchCapacity,
+                            adaptiveSettings.getMaxCapacity(),
+                            batchTimeoutInMillis,
+                            adaptiveSettings.getMaxBatchesPerSecond()
+                    )
+                    : BatchSizing.fixed(batchCapacity, batchTimeoutInMillis);
+
+            return new BatchBufferingService<>(
+                    batchSizing,
+                    deadlineFlushSettings.isEnabled() ? QueryComputation::getDeadlineNanos : null,
+                    deadlineFlushSettings.getBackendBudgetInMillis(),
+                    metrics,
+                    batchProcessor::process
+            );
+        }
+
+        if (batchingMode == BatchingMode.REACTOR) {
+            return new ReactorBatchingService<>(batchCapacity, batchTimeoutInMillis, batchProcessor::processReactive);
+        }
+
+        return create(batchingMode, batchCapacity, batchTimeoutInMillis, ringSize, batchProcessor::process);
+    }
+}
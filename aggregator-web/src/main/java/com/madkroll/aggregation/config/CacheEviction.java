@@ -0,0 +1,10 @@
+package com.madkroll.aggregation.config;
+
+public enum CacheEviction {
+
+    // frequency-aware admission and eviction, keeps popular entries under scan-like traffic (Caffeine)
+    W_TINY_LFU,
+
+    // evicts least recently used entries (Guava)
+    LRU
+}
@@ -0,0 +1,32 @@
+package com.madkroll.aggregation.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Response cache settings of single data provider, bound from providers.<name>.cache.
+ */
+@Getter
+@Setter
+public class CacheSettings {
+
+    private boolean enabled = false;
+
+    private int ttlInSeconds = 60;
+
+    // how long stale value is still served while being refreshed, zero disables
+    private int staleWhileRevalidateInSeconds = 0;
+
+    // zero disables caching of missing values
+    private int negativeTtlInSeconds = 0;
+
+    // how long before becoming stale value read often is refreshed, zero disables
+    private int refreshAheadInSeconds = 0;
+
+    // reads of the same value making it eligible for refresh ahead
+    private int refreshAheadMinHits = 3;
+
+    private long maxSize = 10_000;
+
+    private CacheEviction eviction = CacheEviction.W_TINY_LFU;
+}
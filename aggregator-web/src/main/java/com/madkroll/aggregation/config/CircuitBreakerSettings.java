@@ -0,0 +1,28 @@
+package com.madkroll.aggregation.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Circuit breaker settings of single data provider, bound from providers.<name>.circuit-breaker.
+ */
+@Getter
+@Setter
+public class CircuitBreakerSettings {
+
+    private boolean enabled = true;
+
+    // number of the latest backend calls share of failed and slow ones is computed over
+    private int windowSize = 20;
+
+    private double failureRateThreshold = 0.5;
+
+    private double slowCallRateThreshold = 0.8;
+
+    private long slowCallInMillis = 5_000;
+
+    private long openInMillis = 10_000;
+
+    // queries submitted to probe backend once open duration passed
+    private int halfOpenProbes = 1;
+}
@@ -0,0 +1,135 @@
+package com.madkroll.aggregation.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.madkroll.aggregation.services.*;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+/**
+ * Builds data provider with its whole pipeline out of provider settings:
+ * web client, backend client, batch processor, batching service, cache, admission limit and circuit breaker.
+ * Nothing is shared between providers except executors and event loops opted in, so each one is tuned on its own.
+ */
+@Component
+@AllArgsConstructor
+public class DataProviderFactory {
+
+    private final WebClientFactory webClientFactory;
+    private final ResponseCacheFactory responseCacheFactory;
+    private final BatchingServiceFactory batchingServiceFactory;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Executor batchPreparationExecutor;
+    private final Executor responseFanOutExecutor;
+
+    public DataProvider<?> create(final String providerName, final ProviderSettings settings) {
+        return create(providerName, settings, valueDecoder(settings.getValueType()));
+    }
+
+    private <V> DataProvider<V> create(
+            final String providerName,
+            final ProviderSettings settings,
+            final ValueDecoder<V> valueDecoder
+    ) {
+        final BackendSettings backend = settings.getBackend();
+        final BatchSettings batch = settings.getBatch();
+
+        final ProviderMetrics metrics = new ProviderMetrics(meterRegistry, providerName);
+        final CircuitBreaker circuitBreaker = circuitBreaker(providerName, settings.getCircuitBreaker());
+
+        final DataProviderClient<V> providerClient = new DataProviderClient<>(
+                backend.getTimeoutInSeconds(),
+                backend.getMaxRetries(),
+                Duration.ofMillis(backend.getRetryBackoffInMillis()),
+                webClientFactory.create(providerName, backend.getBaseUrl(), backend.isCompress(), backend.getPool()),
+                objectMapper,
+                valueDecoder,
+                hedgingPolicy(backend.getHedging()),
+                circuitBreaker,
+                metrics
+        );
+
+        final BatchProcessor<V> batchProcessor = new BatchProcessor<>(
+                providerClient,
+                batchPreparationExecutor,
+                responseFanOutExecutor,
+                metrics
+        );
+
+        final BatchingService<QueryComputation<V>> batchingService = batchingServiceFactory.create(
+                batch.getMode(),
+                batch.getCapacity(),
+                batch.getTimeoutInMillis(),
+                batch.getRingSize(),
+                batch.getAdaptive(),
+                batch.getDeadlineFlush(),
+                metrics,
+                batchProcessor
+        );
+
+        return new DataProvider<>(
+                backend.getTimeoutInSeconds(),
+                batchingService,
+                responseCacheFactory.create(settings.getCache()),
+                admissionLimit(settings.getAdmission()),
+                circuitBreaker,
+                metrics
+        );
+    }
+
+    /**
+     * Prices keep their exact decimal representation.
+     */
+    private ValueDecoder<?> valueDecoder(final ValueType valueType) {
+        switch (valueType) {
+            case DECIMAL:
+                return new BigDecimalValueDecoder();
+            case STRING:
+                return new StringValueDecoder();
+            case STRING_LIST:
+                return new StringListValueDecoder();
+            default:
+                throw new IllegalArgumentException("Unsupported value type: " + valueType);
+        }
+    }
+
+    private AdmissionLimit admissionLimit(final AdmissionSettings settings) {
+        return settings.isAdaptive()
+                ? AdmissionLimit.adaptive(settings.getMaxInFlight(), settings.getMinLimit(), settings.getMaxLimit())
+                : AdmissionLimit.fixed(settings.getMaxInFlight());
+    }
+
+    private HedgingPolicy hedgingPolicy(final HedgingSettings settings) {
+        if (!settings.isEnabled()) {
+            return HedgingPolicy.disabled();
+        }
+
+        return HedgingPolicy.of(
+                settings.getPercentile(),
+                settings.getWindowSize(),
+                settings.getMinSamples(),
+                settings.getRecomputeEvery(),
+                settings.getMinDelayInMillis()
+        );
+    }
+
+    private CircuitBreaker circuitBreaker(final String providerName, final CircuitBreakerSettings settings) {
+        if (!settings.isEnabled()) {
+            return CircuitBreaker.disabled();
+        }
+
+        return CircuitBreaker.of(
+                providerName,
+                settings.getWindowSize(),
+                settings.getFailureRateThreshold(),
+                settings.getSlowCallRateThreshold(),
+                settings.getSlowCallInMillis(),
+                settings.getOpenInMillis(),
+                settings.getHalfOpenProbes()
+        );
+    }
+}
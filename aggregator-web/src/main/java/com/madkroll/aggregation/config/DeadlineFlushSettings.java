@@ -0,0 +1,17 @@
+package com.madkroll.aggregation.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Deadline-aware flush settings of single data provider, bound from providers.<name>.batch.deadline-flush.
+ */
+@Getter
+@Setter
+public class DeadlineFlushSettings {
+
+    private boolean enabled = false;
+
+    // batch is sealed once any computation has just this time left to its deadline
+    private long backendBudgetInMillis = 2_000;
+}
@@ -0,0 +1,10 @@
+package com.madkroll.aggregation.config;
+
+public enum ExecutionMode {
+
+    // asynchronous stages on bounded platform thread pools, requests are handled as CompletableFuture
+    PLATFORM,
+
+    // thread per task on virtual threads (JDK 21+), requests are handled as plain blocking code
+    VIRTUAL
+}
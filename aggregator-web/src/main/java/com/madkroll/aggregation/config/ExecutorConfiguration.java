@@ -0,0 +1,111 @@
+package com.madkroll.aggregation.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Executor per pipeline stage, so slow callbacks of one stage can not starve the others.
+ */
+@Configuration
+public class ExecutorConfiguration {
+
+    @Bean
+    @ConfigurationProperties("executors.batch-preparation")
+    public ExecutorSettings batchPreparationExecutorSettings() {
+        return new ExecutorSettings();
+    }
+
+    /**
+     * Collects queries of sealed batch and sends it to backend, releasing the thread which sealed the batch.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService batchPreparationExecutor(
+            final @Value("${executors.mode}") ExecutionMode executionMode,
+            final ExecutorSettings batchPreparationExecutorSettings,
+            final ExecutorFactory executorFactory,
+            final MeterRegistry meterRegistry
+    ) {
+        final ExecutorService executor = executorFactory.create(executionMode, "batch-preparation", batchPreparationExecutorSettings);
+        return monitored(executor, "batch-preparation", meterRegistry);
+    }
+
+    @Bean
+    @ConfigurationProperties("executors.response-fan-out")
+    public ExecutorSettings responseFanOutExecutorSettings() {
+        return new ExecutorSettings();
+    }
+
+    /**
+     * Completes computations of the batch with values received from backend.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService responseFanOutExecutor(
+            final @Value("${executors.mode}") ExecutionMode executionMode,
+            final ExecutorSettings responseFanOutExecutorSettings,
+            final ExecutorFactory executorFactory,
+            final MeterRegistry meterRegistry
+    ) {
+        final ExecutorService executor = executorFactory.create(executionMode, "response-fan-out", responseFanOutExecutorSettings);
+        return monitored(executor, "response-fan-out", meterRegistry);
+    }
+
+    @Bean
+    @ConfigurationProperties("executors.aggregation-merge")
+    public ExecutorSettings aggregationMergeExecutorSettings() {
+        return new ExecutorSettings();
+    }
+
+    /**
+     * Merges values of all data providers into single response.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService aggregationMergeExecutor(
+            final @Value("${executors.mode}") ExecutionMode executionMode,
+            final ExecutorSettings aggregationMergeExecutorSettings,
+            final ExecutorFactory executorFactory,
+            final MeterRegistry meterRegistry
+    ) {
+        final ExecutorService executor = executorFactory.create(executionMode, "aggregation-merge", aggregationMergeExecutorSettings);
+        return monitored(executor, "aggregation-merge", meterRegistry);
+    }
+
+    /**
+     * Exposes queue depth, pool size and completed tasks of the executor.
+     */
+    private ExecutorService monitored(
+            final ExecutorService executor,
+            final String stageName,
+            final MeterRegistry meterRegistry
+    ) {
+        new ExecutorServiceMetrics(executor, stageName, Tags.empty()).bindTo(meterRegistry);
+        return executor;
+    }
+
+    /**
+     * Runs every request handler on its own virtual thread, releasing servlet thread right away.
+     * Servlet threads themselves stay platform ones: Tomcat processes socket holding a monitor,
+     * so virtual servlet thread blocked in handler would pin its carrier thread.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "executors.mode", havingValue = "virtual")
+    public WebMvcConfigurer virtualThreadRequestConfigurer(final ExecutorFactory executorFactory) {
+        final TaskExecutorAdapter requestExecutor = new TaskExecutorAdapter(executorFactory.createVirtual());
+        return new WebMvcConfigurer() {
+            @Override
+            public void configureAsyncSupport(final AsyncSupportConfigurer configurer) {
+                configurer.setTaskExecutor(requestExecutor);
+            }
+        };
+    }
+}
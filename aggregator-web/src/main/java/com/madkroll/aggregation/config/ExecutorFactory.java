@@ -0,0 +1,69 @@
+package com.madkroll.aggregation.config;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.*;
+
+@Component
+public class ExecutorFactory {
+
+    /**
+     * Builds executor of single pipeline stage for the given execution mode.
+     * Virtual threads are not pooled, so executor settings apply to platform mode only.
+     */
+    public ExecutorService create(
+            final ExecutionMode executionMode,
+            final String stageName,
+            final ExecutorSettings settings
+    ) {
+        switch (executionMode) {
+            case PLATFORM:
+                return create(stageName, settings);
+            case VIRTUAL:
+                return createVirtual();
+            default:
+                throw new IllegalArgumentException("Unsupported execution mode: " + executionMode);
+        }
+    }
+
+    /**
+     * Builds executor starting new virtual thread per task.
+     * Looked up reflectively, since the service is compiled for Java 11, fails fast if JVM has no virtual threads.
+     */
+    public ExecutorService createVirtual() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Virtual threads require JDK 21+, running on " + Runtime.version(), e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to create virtual thread executor", e);
+        }
+    }
+
+    /**
+     * Builds executor of single pipeline stage with bounded queue, threads are named after the stage.
+     */
+    public ThreadPoolExecutor create(final String stageName, final ExecutorSettings settings) {
+        return new ThreadPoolExecutor(
+                settings.getCoreSize(),
+                settings.getMaxSize(),
+                settings.getKeepAliveInSeconds(),
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(settings.getQueueCapacity()),
+                new DefaultThreadFactory(stageName, true),
+                toHandler(settings.getRejectionPolicy())
+        );
+    }
+
+    private RejectedExecutionHandler toHandler(final RejectionPolicy rejectionPolicy) {
+        switch (rejectionPolicy) {
+            case ABORT:
+                return new ThreadPoolExecutor.AbortPolicy();
+            case CALLER_RUNS:
+                return new ThreadPoolExecutor.CallerRunsPolicy();
+            default:
+                throw new IllegalArgumentException("Unsupported rejection policy: " + rejectionPolicy);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.madkroll.aggregation.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Executor settings of single pipeline stage, bound from executors.<stage>.
+ */
+@Getter
+@Setter
+public class ExecutorSettings {
+
+    private int coreSize = Runtime.getRuntime().availableProcessors();
+
+    // threads above core size are started only once the queue is full
+    private int maxSize = Runtime.getRuntime().availableProcessors();
+
+    private int queueCapacity = 10_000;
+
+    // idle threads above core size are stopped after this time
+    private int keepAliveInSeconds = 60;
+
+    private RejectionPolicy rejectionPolicy = RejectionPolicy.CALLER_RUNS;
+}
@@ -0,0 +1,28 @@
+package com.madkroll.aggregation.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Hedging settings of single data provider, bound from providers.<name>.backend.hedging.
+ */
+@Getter
+@Setter
+public class HedgingSettings {
+
+    // every hedged call adds load to backend, so it's enabled per provider
+    private boolean enabled = false;
+
+    // call not responding by this percentile of the latest latencies is sent again
+    private double percentile = 0.95;
+
+    private int windowSize = 100;
+
+    // calls are not hedged until this many latencies observed
+    private int minSamples = 20;
+
+    // delay is recomputed once per this many latencies recorded, not on every successful call
+    private int recomputeEvery = 10;
+
+    private long minDelayInMillis = 10;
+}
@@ -0,0 +1,25 @@
+package com.madkroll.aggregation.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Settings of single data provider, bound from providers.<name>.
+ */
+@Getter
+@Setter
+public class ProviderSettings {
+
+    // type values of backend response are decoded into
+    private ValueType valueType = ValueType.STRING;
+
+    private BackendSettings backend = new BackendSettings();
+
+    private BatchSettings batch = new BatchSettings();
+
+    private AdmissionSettings admission = new AdmissionSettings();
+
+    private CircuitBreakerSettings circuitBreaker = new CircuitBreakerSettings();
+
+    private CacheSettings cache = new CacheSettings();
+}
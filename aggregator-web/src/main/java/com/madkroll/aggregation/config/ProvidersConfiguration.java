@@ -0,0 +1,40 @@
+package com.madkroll.aggregation.config;
+
+import com.madkroll.aggregation.services.DataProvider;
+import com.madkroll.aggregation.services.DataProviderRegistry;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Registers data provider per every providers.<name> entry, so a backend is added by configuration only.
+ */
+@Configuration
+public class ProvidersConfiguration {
+
+    @Bean
+    @ConfigurationProperties
+    public ProvidersSettings providersSettings() {
+        return new ProvidersSettings();
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public DataProviderRegistry dataProviderRegistry(
+            final ProvidersSettings providersSettings,
+            final DataProviderFactory dataProviderFactory
+    ) {
+        if (providersSettings.getProviders().isEmpty()) {
+            throw new IllegalStateException("No data providers configured, expected at least one providers.<name>");
+        }
+
+        final Map<String, DataProvider<?>> providers = new LinkedHashMap<>();
+        providersSettings.getProviders().forEach(
+                (providerName, settings) -> providers.put(providerName, dataProviderFactory.create(providerName, settings))
+        );
+
+        return new DataProviderRegistry(providers);
+    }
+}
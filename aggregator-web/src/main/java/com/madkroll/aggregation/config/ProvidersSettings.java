@@ -0,0 +1,18 @@
+package com.madkroll.aggregation.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Settings of all data providers keyed by provider name, bound from providers.
+ * Providers keep the order they are configured in.
+ */
+@Getter
+@Setter
+public class ProvidersSettings {
+
+    private Map<String, ProviderSettings> providers = new LinkedHashMap<>();
+}
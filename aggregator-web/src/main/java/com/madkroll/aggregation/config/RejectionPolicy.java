@@ -0,0 +1,15 @@
+package com.madkroll.aggregation.config;
+
+/**
+ * What a stage does once its executor is saturated and its queue is full.
+ * Discarding policies are not supported: discarded callback would leave its future never completed.
+ */
+public enum RejectionPolicy {
+
+    // task is rejected: batch preparation and response fan-out complete the batch with no value,
+    // aggregation merge fails the request with 500
+    ABORT,
+
+    // task runs on the submitting thread, slowing down the producing stage
+    CALLER_RUNS
+}
@@ -0,0 +1,62 @@
+package com.madkroll.aggregation.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.cache.CacheBuilder;
+import com.madkroll.aggregation.services.CachedResponse;
+import com.madkroll.aggregation.services.ResponseCache;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+@Component
+public class ResponseCacheFactory {
+
+    /**
+     * Builds response cache bounded by size and evicting entries by the configured policy.
+     */
+    public <V> ResponseCache<V> create(final CacheSettings settings) {
+        if (!settings.isEnabled()) {
+            return ResponseCache.disabled();
+        }
+
+        // underlying cache only drops entries nobody can use anymore, freshness is checked per entry
+        final long retentionInSeconds = Math.max(
+                settings.getTtlInSeconds() + settings.getStaleWhileRevalidateInSeconds(),
+                settings.getNegativeTtlInSeconds()
+        );
+
+        return new ResponseCache<>(
+                newEntries(settings.getEviction(), settings.getMaxSize(), retentionInSeconds),
+                Duration.ofSeconds(settings.getTtlInSeconds()),
+                Duration.ofSeconds(settings.getStaleWhileRevalidateInSeconds()),
+                Duration.ofSeconds(settings.getNegativeTtlInSeconds()),
+                Duration.ofSeconds(settings.getRefreshAheadInSeconds()),
+                settings.getRefreshAheadMinHits()
+        );
+    }
+
+    private <V> ConcurrentMap<String, CachedResponse<V>> newEntries(
+            final CacheEviction eviction,
+            final long maxSize,
+            final long retentionInSeconds
+    ) {
+        switch (eviction) {
+            case W_TINY_LFU:
+                return Caffeine.newBuilder()
+                        .maximumSize(maxSize)
+                        .expireAfterWrite(retentionInSeconds, TimeUnit.SECONDS)
+                        .<String, CachedResponse<V>>build()
+                        .asMap();
+            case LRU:
+                return CacheBuilder.newBuilder()
+                        .maximumSize(maxSize)
+                        .expireAfterWrite(retentionInSeconds, TimeUnit.SECONDS)
+                        .<String, CachedResponse<V>>build()
+                        .asMap();
+            default:
+                throw new IllegalArgumentException("Unsupported cache eviction: " + eviction);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.madkroll.aggregation.config;
+
+/**
+ * Type values of data provider backend are decoded into, see ValueDecoder.
+ */
+public enum ValueType {
+    // exact decimal, e.g. price
+    DECIMAL,
+    STRING,
+    STRING_LIST
+}
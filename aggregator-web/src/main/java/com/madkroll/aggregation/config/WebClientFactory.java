@@ -0,0 +1,103 @@
+package com.madkroll.aggregation.config;
+
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+@Log4j2
+@Component
+public class WebClientFactory {
+
+    // event loops shared by all provider clients opting in
+    private final LoopResources sharedLoopResources =
+            LoopResources.create("provider-client", LoopResources.DEFAULT_IO_WORKER_COUNT, true);
+
+    // pools and dedicated event loops created so far, released on shutdown
+    private final List<Disposable> resources = new CopyOnWriteArrayList<>(List.of(sharedLoopResources));
+
+    /**
+     * Builds web client running on its own connection pool, tuned by provider settings.
+     * Compression asks backend for gzip or deflate response, decompressed before parsing.
+     */
+    public WebClient create(
+            final String providerName,
+            final String baseUrl,
+            final boolean compress,
+            final BackendPoolSettings settings
+    ) {
+        final ConnectionProvider connectionProvider = newConnectionProvider(providerName, settings);
+        final LoopResources loopResources = settings.isShareEventLoops()
+                ? sharedLoopResources
+                : LoopResources.create(providerName + "-client", settings.getEventLoopThreads(), true);
+
+        resources.add(connectionProvider);
+        if (loopResources != sharedLoopResources) {
+            resources.add(loopResources);
+        }
+
+        final HttpClient httpClient = HttpClient.create(connectionProvider)
+                .compress(compress)
+                .keepAlive(settings.isKeepAlive())
+                .tcpConfiguration(
+                        tcpClient -> tcpClient
+                                .runOn(loopResources)
+                                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, settings.getConnectTimeoutInMillis())
+                                .option(ChannelOption.SO_KEEPALIVE, settings.isKeepAlive())
+                )
+                .doOnRequest((request, connection) -> {
+                    // handlers added per request are removed once connection is released back to pool
+                    if (settings.getReadTimeoutInSeconds() > 0) {
+                        connection.addHandlerLast(
+                                new ReadTimeoutHandler(settings.getReadTimeoutInSeconds(), TimeUnit.SECONDS)
+                        );
+                    }
+                });
+
+        log.info(
+                "Provider {} uses up to {} connections, {} pending acquires",
+                providerName,
+                settings.getMaxConnections(),
+                settings.getPendingAcquireMaxCount()
+        );
+
+        return WebClient.builder()
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        resources.forEach(Disposable::dispose);
+    }
+
+    private ConnectionProvider newConnectionProvider(final String providerName, final BackendPoolSettings settings) {
+        final ConnectionProvider.Builder builder = ConnectionProvider.builder(providerName)
+                .maxConnections(settings.getMaxConnections())
+                .pendingAcquireMaxCount(settings.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(Duration.ofMillis(settings.getPendingAcquireTimeoutInMillis()));
+
+        if (settings.getMaxIdleTimeInSeconds() > 0) {
+            builder.maxIdleTime(Duration.ofSeconds(settings.getMaxIdleTimeInSeconds()));
+        }
+
+        if (settings.getMaxLifeTimeInSeconds() > 0) {
+            builder.maxLifeTime(Duration.ofSeconds(settings.getMaxLifeTimeInSeconds()));
+        }
+
+        return builder.build();
+    }
+}
@@ -0,0 +1,26 @@
+package com.madkroll.aggregation.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Single aggregation request of batch envelope, the same as query parameters of GET /aggregation:
+ * queries keyed by data provider name. Providers absent are not queried, unknown ones are ignored.
+ */
+@Getter
+@ToString
+public class AggregationQuery {
+
+    @JsonValue
+    private final Map<String, Set<String>> queries;
+
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    public AggregationQuery(final Map<String, Set<String>> queries) {
+        this.queries = queries == null ? Map.of() : queries;
+    }
+}
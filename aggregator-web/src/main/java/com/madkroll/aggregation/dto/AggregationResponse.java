@@ -1,19 +1,20 @@
 package com.madkroll.aggregation.dto;
 
+import com.fasterxml.jackson.annotation.JsonValue;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.ToString;
 
-import java.math.BigDecimal;
-import java.util.List;
 import java.util.Map;
 
+/**
+ * Values of every data provider keyed by provider name, serialized as JSON object with field per provider.
+ */
 @Getter
 @AllArgsConstructor
 @ToString
 public class AggregationResponse {
 
-    private final Map<String, BigDecimal> pricing;
-    private final Map<String, String> track;
-    private final Map<String, List<String>> shipments;
+    @JsonValue
+    private final Map<String, Map<String, ?>> values;
 }
@@ -0,0 +1,20 @@
+package com.madkroll.aggregation.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Map;
+
+/**
+ * Values of single data provider, streamed as soon as all its queries are computed.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class AggregationSection {
+
+    // name of data provider, the same as key of AggregationResponse values
+    private final String provider;
+    private final Map<String, ?> values;
+}
@@ -0,0 +1,139 @@
+package com.madkroll.aggregation.services;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounds number of queries in flight of single data provider, from submission till computation is completed.
+ * <p>
+ * Fixed limit never changes. Adaptive limit follows latency of completed queries, the same way as gradient
+ * congestion control:
+ * <ul>
+ *     <li>short-term latency is compared to long-term one, their ratio is the gradient</li>
+ *     <li>while backend keeps up, gradient stays 1 and limit grows by its square root, probing for more capacity</li>
+ *     <li>once backend slows down and queries queue up, gradient drops below 1 and limit shrinks proportionally,
+ *     so excess load is rejected at entry instead of queuing</li>
+ * </ul>
+ */
+public class AdmissionLimit {
+
+    // weight of the latest completed query in short-term and long-term latency
+    private static final double SHORT_SMOOTHING = 0.1;
+    private static final double LONG_SMOOTHING = 0.01;
+
+    // short-term latency up to this ratio of long-term one does not shrink the limit
+    private static final double TOLERANCE = 1.5;
+
+    // weight of the new estimation in the limit
+    private static final double LIMIT_SMOOTHING = 0.2;
+
+    private final boolean adaptive;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    // current limit, estimated only under lock of sample(), read without it
+    private volatile int limit;
+
+    private double estimatedLimit;
+
+    // smoothed latency in nanos, zero until the first sample
+    private double shortLatency;
+    private double longLatency;
+
+    private AdmissionLimit(final boolean adaptive, final int limit, final int minLimit, final int maxLimit) {
+        if (minLimit < 1) {
+            throw new IllegalArgumentException("Admission limit must be positive: " + minLimit);
+        }
+
+        if (limit < minLimit || limit > maxLimit) {
+            throw new IllegalArgumentException("Admission limit must be between min and max limit: " + limit);
+        }
+
+        this.adaptive = adaptive;
+        this.limit = limit;
+        this.estimatedLimit = limit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    public static AdmissionLimit unlimited() {
+        return fixed(Integer.MAX_VALUE);
+    }
+
+    public static AdmissionLimit fixed(final int limit) {
+        return new AdmissionLimit(false, limit, Math.min(1, limit), limit);
+    }
+
+    public static AdmissionLimit adaptive(final int initialLimit, final int minLimit, final int maxLimit) {
+        return new AdmissionLimit(true, initialLimit, minLimit, maxLimit);
+    }
+
+    /**
+     * Admits one more query, unless limit is already reached.
+     *
+     * @return true if query is admitted and must be released once completed
+     */
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+
+        return true;
+    }
+
+    /**
+     * Releases query admitted, but not submitted.
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Releases completed query, adjusting adaptive limit to its latency.
+     *
+     * @param latencyNanos time since query was submitted till it's completed, with or without value
+     */
+    public void release(final long latencyNanos) {
+        inFlight.decrementAndGet();
+        if (adaptive) {
+            sample(latencyNanos);
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void sample(final long latencyNanos) {
+        if (longLatency == 0) {
+            shortLatency = latencyNanos;
+            longLatency = latencyNanos;
+            return;
+        }
+
+        shortLatency = SHORT_SMOOTHING * latencyNanos + (1 - SHORT_SMOOTHING) * shortLatency;
+        longLatency = LONG_SMOOTHING * latencyNanos + (1 - LONG_SMOOTHING) * longLatency;
+
+        // latency kept dropping for a while, so long-term one catches up faster
+        if (longLatency / shortLatency > 2) {
+            longLatency *= 0.95;
+        }
+
+        final double gradient = Math.max(0.5, Math.min(1, TOLERANCE * longLatency / shortLatency));
+        final double probed = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        final double smoothed = LIMIT_SMOOTHING * probed + (1 - LIMIT_SMOOTHING) * estimatedLimit;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, smoothed));
+        limit = (int) estimatedLimit;
+    }
+}
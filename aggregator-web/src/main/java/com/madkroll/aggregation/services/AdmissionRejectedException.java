@@ -0,0 +1,16 @@
+package com.madkroll.aggregation.services;
+
+/**
+ * Thrown once data provider already has as many queries in flight as its admission limit allows,
+ * or once batching service has no room for another item.
+ */
+public class AdmissionRejectedException extends RuntimeException {
+
+    public AdmissionRejectedException(final int limit) {
+        super("Too many queries in flight, admission limit is " + limit);
+    }
+
+    public AdmissionRejectedException(final String message) {
+        super(message);
+    }
+}
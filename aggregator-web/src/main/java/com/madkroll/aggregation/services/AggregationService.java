@@ -1,77 +1,335 @@
 package com.madkroll.aggregation.services;
 
+import com.google.common.collect.Maps;
+import com.madkroll.aggregation.dto.AggregationQuery;
 import com.madkroll.aggregation.dto.AggregationResponse;
-import lombok.AllArgsConstructor;
+import com.madkroll.aggregation.dto.AggregationSection;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.math.BigDecimal;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 @Log4j2
 @Service
-@AllArgsConstructor
 public class AggregationService {
 
-    private final DataProvider<BigDecimal> pricingProvider;
-    private final DataProvider<String> trackProvider;
-    private final DataProvider<List<String>> shipmentsProvider;
+    // every registered data provider is queried for its own queries, in parallel
+    private final DataProviderRegistry dataProviderRegistry;
     private final NoResponseMapper noResponseMapper;
 
+    // merges values of all data providers, so slow merging can not starve batch processing
+    private final Executor aggregationMergeExecutor;
+
+    private final MeterRegistry meterRegistry;
+
+    // time since request arrived till values of the data provider are available, by provider name
+    private final Map<String, Timer> providerLatencies = new HashMap<>();
+
+    // time since request arrived till response is built
+    private final Timer requestLatency;
+
+    public AggregationService(
+            final DataProviderRegistry dataProviderRegistry,
+            final NoResponseMapper noResponseMapper,
+            final Executor aggregationMergeExecutor,
+            final MeterRegistry meterRegistry
+    ) {
+        this.dataProviderRegistry = dataProviderRegistry;
+        this.noResponseMapper = noResponseMapper;
+        this.aggregationMergeExecutor = aggregationMergeExecutor;
+        this.meterRegistry = meterRegistry;
+        dataProviderRegistry.getProviderNames().forEach(
+                providerName -> providerLatencies.put(
+                        providerName,
+                        latency("aggregation.provider.latency", "provider", providerName)
+                )
+        );
+        this.requestLatency = latency("aggregation.request.latency");
+    }
+
     /**
      * Submits asynchronous data retrieving to all data providers in parallel and awaits for results.
-     * Then merges what is available into single response.
+     * Then merges what is available into single response, with values of every registered provider.
+     *
+     * @param queries queries keyed by provider name, providers absent are not queried, unknown ones are ignored
+     */
+    public CompletableFuture<AggregationResponse> computeAndMerge(final Map<String, Set<String>> queries) {
+        return computeAndMerge(queries, RequestTrace.none());
+    }
+
+    /**
+     * Same as {@link #computeAndMerge(Map)}, recording latency breakdown into given trace.
      */
     public CompletableFuture<AggregationResponse> computeAndMerge(
-            final Set<String> pricing,
-            final Set<String> track,
-            final Set<String> shipments
+            final Map<String, Set<String>> queries,
+            final RequestTrace trace
     ) {
-        // completable futures of ongoing computations
-        final var computingPricing = getOrNoValuePerEach(pricingProvider.fetch(pricing));
-        final var computingTrack = getOrNoValuePerEach(trackProvider.fetch(track));
-        final var computingShipments = getOrNoValuePerEach(shipmentsProvider.fetch(shipments));
+        final Timer.Sample request = Timer.start(meterRegistry);
+        trace.record("controller", trace.getStartedAtNanos(), System.nanoTime());
 
-        return CompletableFuture.allOf(
-                computingPricing,
-                computingTrack,
-                computingShipments
+        final Map<String, List<? extends QueryComputation<?>>> computations = fetchAll(queries, trace);
+
+        // completable futures of ongoing computations, by provider name
+        final Map<String, CompletableFuture<Map<String, Object>>> computing = new LinkedHashMap<>();
+        computations.forEach(
+                (providerName, queryComputations) -> computing.put(
+                        providerName,
+                        timed(getOrNoValuePerEach(queryComputations), request, providerLatencies.get(providerName))
+                )
+        );
+
+        final CompletableFuture<AggregationResponse> response = CompletableFuture.allOf(
+                computing.values().toArray(CompletableFuture[]::new)
+        ).thenApply(
+                allComputed -> System.nanoTime()
         ).thenApplyAsync(
-                buildAggregatedResponse -> new AggregationResponse(
-                        getOrNoValuesForAll(computingPricing, pricing),
-                        getOrNoValuesForAll(computingTrack, track),
-                        getOrNoValuesForAll(computingShipments, shipments)
+                computedAtNanos -> {
+                    final Map<String, Map<String, ?>> values = new LinkedHashMap<>();
+                    computing.forEach(
+                            (providerName, computingValues) -> values.put(
+                                    providerName,
+                                    getOrNoValuesForAll(computingValues, queries.get(providerName))
+                            )
+                    );
+                    finish(trace, computedAtNanos, computations);
+                    return new AggregationResponse(values);
+                },
+                aggregationMergeExecutor
+        );
+
+        return timed(response, request, requestLatency);
+    }
+
+    /**
+     * Batch variant of {@link #computeAndMerge(Map)}.
+     * Queries of all requests are fetched together, so they fill provider batches at once
+     * and every query repeated across requests is computed once. Responses are in order of requests.
+     */
+    public CompletableFuture<List<AggregationResponse>> computeAndMergeAll(
+            final List<AggregationQuery> requests,
+            final RequestTrace trace
+    ) {
+        return computeAndMerge(union(requests), trace).thenApply(
+                merged -> requests.stream()
+                        .map(request -> select(merged, request.getQueries()))
+                        .collect(Collectors.toList())
+        );
+    }
+
+    /**
+     * Blocking variant of {@link #computeAndMerge(Map)}, meant to run on virtual threads.
+     * <p>
+     * Data providers compute concurrently anyway, so the calling thread just awaits each of them in turn
+     * and builds the response itself, no other thread is blocked on its behalf.
+     * Once the calling thread is interrupted, providers not awaited yet are answered with no value.
+     */
+    public AggregationResponse computeAndMergeBlocking(final Map<String, Set<String>> queries) {
+        return computeAndMergeBlocking(queries, RequestTrace.none());
+    }
+
+    /**
+     * Same as {@link #computeAndMergeBlocking(Map)}, recording latency breakdown into given trace.
+     */
+    public AggregationResponse computeAndMergeBlocking(
+            final Map<String, Set<String>> queries,
+            final RequestTrace trace
+    ) {
+        final Timer.Sample request = Timer.start(meterRegistry);
+        trace.record("controller", trace.getStartedAtNanos(), System.nanoTime());
+
+        final Map<String, List<? extends QueryComputation<?>>> computations = fetchAll(queries, trace);
+
+        // completes once all computations of provider are handled, records provider latency on the way
+        final Map<String, CompletableFuture<Void>> computing = new LinkedHashMap<>();
+        computations.forEach(
+                (providerName, queryComputations) -> computing.put(
+                        providerName,
+                        timed(allHandled(queryComputations), request, providerLatencies.get(providerName))
+                )
+        );
+
+        try {
+            final Map<String, Map<String, ?>> values = new LinkedHashMap<>();
+            computing.forEach(
+                    (providerName, computingValues) -> values.put(
+                            providerName,
+                            join(computingValues, computations.get(providerName), queries.get(providerName))
+                    )
+            );
+            final long computedAtNanos = System.nanoTime();
+
+            final AggregationResponse response = new AggregationResponse(values);
+            finish(trace, computedAtNanos, computations);
+            return response;
+        } finally {
+            request.stop(requestLatency);
+        }
+    }
+
+    private CompletableFuture<Void> allHandled(final List<? extends QueryComputation<?>> queryComputations) {
+        return CompletableFuture.allOf(
+                queryComputations.stream()
+                        .map(QueryComputation::getResponseHandling)
+                        .toArray(CompletableFuture[]::new)
+        );
+    }
+
+    /**
+     * Awaits computations of single provider on the calling thread and collects their values.
+     */
+    private Map<String, Object> join(
+            final CompletableFuture<Void> computing,
+            final List<? extends QueryComputation<?>> queryComputations,
+            final Set<String> queries
+    ) {
+        try {
+            // never fails, computation completes with no value on timeout or failure
+            computing.get();
+            return collectCompleted(queryComputations);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return noResponseMapper.noResponseMap(queries);
+        } catch (ExecutionException e) {
+            log.error("Unable to compute values, returning empty response for queries: {}", queries, e);
+            return noResponseMapper.noResponseMap(queries);
+        }
+    }
+
+    /**
+     * Reactive variant of {@link #computeAndMerge(Map)}.
+     * Zips responses of all data providers, so the response is built on the thread completing the last computation.
+     */
+    public Mono<AggregationResponse> computeAndMergeReactive(final Map<String, Set<String>> queries) {
+        return computeAndMergeReactive(queries, RequestTrace.none());
+    }
+
+    /**
+     * Same as {@link #computeAndMergeReactive(Map)}, recording latency breakdown into given trace.
+     */
+    public Mono<AggregationResponse> computeAndMergeReactive(
+            final Map<String, Set<String>> queries,
+            final RequestTrace trace
+    ) {
+        final Timer.Sample request = Timer.start(meterRegistry);
+        trace.record("controller", trace.getStartedAtNanos(), System.nanoTime());
+
+        final Map<String, List<? extends QueryComputation<?>>> computations = fetchAll(queries, trace);
+
+        return Mono.zip(
+                sections(computations, request),
+                sections -> {
+                    final long computedAtNanos = System.nanoTime();
+                    final Map<String, Map<String, ?>> values = new LinkedHashMap<>();
+                    for (Object next : sections) {
+                        final AggregationSection section = (AggregationSection) next;
+                        values.put(section.getProvider(), section.getValues());
+                    }
+
+                    finish(trace, computedAtNanos, computations);
+                    return new AggregationResponse(values);
+                }
+        ).doFinally(signal -> request.stop(requestLatency));
+    }
+
+    /**
+     * Streaming variant of {@link #computeAndMerge(Map)}.
+     * Emits section of every data provider as soon as all its queries are computed, so the fastest provider
+     * is not held back by the slowest one. Every provider is emitted exactly once, even with no values.
+     * Latency and trace are recorded once stream is over, even if cancelled by client disconnecting.
+     */
+    public Flux<AggregationSection> computeAndStream(
+            final Map<String, Set<String>> queries,
+            final RequestTrace trace
+    ) {
+        final Timer.Sample request = Timer.start(meterRegistry);
+        trace.record("controller", trace.getStartedAtNanos(), System.nanoTime());
+
+        final Map<String, List<? extends QueryComputation<?>>> computations = fetchAll(queries, trace);
+
+        return Flux.merge(
+                sections(computations, request)
+        ).doFinally(
+                signal -> {
+                    request.stop(requestLatency);
+                    finish(trace, System.nanoTime(), computations);
+                }
+        );
+    }
+
+    /**
+     * Section per data provider, recording provider latency once it's computed or cancelled.
+     */
+    private List<Mono<AggregationSection>> sections(
+            final Map<String, List<? extends QueryComputation<?>>> computations,
+            final Timer.Sample request
+    ) {
+        final List<Mono<AggregationSection>> sections = new ArrayList<>();
+        computations.forEach(
+                (providerName, queryComputations) -> sections.add(
+                        section(providerName, queryComputations)
+                                .doFinally(signal -> request.stop(providerLatencies.get(providerName)))
                 )
         );
+
+        return sections;
+    }
+
+    private Mono<AggregationSection> section(
+            final String providerName,
+            final List<? extends QueryComputation<?>> queryComputations
+    ) {
+        return getOrNoValuePerEachReactive(queryComputations)
+                .map(values -> new AggregationSection(providerName, values));
+    }
+
+    /**
+     * Reactively awaits for all computation results.
+     * Values may be null, so they are collected once all computations completed instead of being emitted one by one.
+     */
+    private Mono<Map<String, Object>> getOrNoValuePerEachReactive(
+            final List<? extends QueryComputation<?>> queryComputations
+    ) {
+        return Mono.fromFuture(
+                CompletableFuture.allOf(
+                        queryComputations.stream()
+                                .map(QueryComputation::getResponseHandling)
+                                .toArray(CompletableFuture[]::new)
+                )
+        )
+                .then(Mono.fromCallable(() -> collectCompleted(queryComputations)))
+                .onErrorResume(
+                        // handles global exceptions, local computation-specific exceptions handled on provider level
+                        throwable -> Mono.fromCallable(
+                                () -> noResponseMapper.noResponseMap(
+                                        queryComputations.stream().map(QueryComputation::getQuery).collect(Collectors.toList())
+                                )
+                        )
+                );
     }
 
     /**
      * Asynchronously awaits for all computation results.
      * Once all results are available, converts them into response object.
      */
-    private <V> CompletableFuture<Map<String, V>> getOrNoValuePerEach(final List<QueryComputation<V>> queryComputations) {
+    private CompletableFuture<Map<String, Object>> getOrNoValuePerEach(
+            final List<? extends QueryComputation<?>> queryComputations
+    ) {
         return CompletableFuture.allOf(
                 queryComputations.stream()
                         .map(QueryComputation::getResponseHandling)
                         .toArray(CompletableFuture[]::new)
         )
                 .thenApplyAsync(
-                        buildBatchResponse -> {
-                            final Map<String, V> response = new HashMap<>();
-
-                            for (var computation : queryComputations) {
-                                response.putIfAbsent(
-                                        computation.getQuery(),
-                                        computation
-                                                .getResponseHandling()
-                                                .getNow(null)
-                                );
-                            }
-
-                            return response;
-                        }
+                        buildBatchResponse -> collectCompleted(queryComputations),
+                        aggregationMergeExecutor
                 ).exceptionally(
                         // handles global exceptions, local computation-specific exceptions handled on provider level
                         throwable -> noResponseMapper.noResponseMap(
@@ -80,6 +338,131 @@ public class AggregationService {
                 );
     }
 
+    /**
+     * Records time since request arrived once computing is over, no matter how it's completed.
+     */
+    private <T> CompletableFuture<T> timed(
+            final CompletableFuture<T> computing,
+            final Timer.Sample request,
+            final Timer latency
+    ) {
+        return computing.whenComplete((completed, throwable) -> request.stop(latency));
+    }
+
+    /**
+     * Fetches computations of every registered data provider, by provider name in registration order.
+     */
+    private Map<String, List<? extends QueryComputation<?>>> fetchAll(
+            final Map<String, Set<String>> queries,
+            final RequestTrace trace
+    ) {
+        final Map<String, List<? extends QueryComputation<?>>> computations = new LinkedHashMap<>();
+        dataProviderRegistry.getProviders().forEach(
+                (providerName, provider) -> computations.put(
+                        providerName,
+                        fetch(providerName, provider, queries.get(providerName), trace)
+                )
+        );
+
+        return computations;
+    }
+
+    /**
+     * Fetches computations of data provider, recording time spent on submitting them into batches.
+     */
+    private <V> List<QueryComputation<V>> fetch(
+            final String providerName,
+            final DataProvider<V> provider,
+            final Set<String> queries,
+            final RequestTrace trace
+    ) {
+        final long fetchingAtNanos = System.nanoTime();
+        final List<QueryComputation<V>> queryComputations = provider.fetch(queries);
+        trace.record(providerName + ".fetch", fetchingAtNanos, System.nanoTime());
+        return queryComputations;
+    }
+
+    /**
+     * Records breakdown of all data providers and merging of their values, once response is built.
+     */
+    private void finish(
+            final RequestTrace trace,
+            final long computedAtNanos,
+            final Map<String, List<? extends QueryComputation<?>>> computations
+    ) {
+        if (!trace.isSampled()) {
+            return;
+        }
+
+        computations.forEach(trace::recordComputations);
+        trace.record("merge", computedAtNanos, System.nanoTime());
+        trace.finish();
+    }
+
+    private Timer latency(final String name, final String... tags) {
+        return Timer.builder(name)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queries of all requests by provider name.
+     */
+    private Map<String, Set<String>> union(final List<AggregationQuery> requests) {
+        final Map<String, Set<String>> union = new HashMap<>();
+        for (AggregationQuery request : requests) {
+            request.getQueries().forEach(
+                    (providerName, queries) -> {
+                        if (queries != null) {
+                            union.computeIfAbsent(providerName, name -> new HashSet<>()).addAll(queries);
+                        }
+                    }
+            );
+        }
+
+        return union;
+    }
+
+    /**
+     * Picks values of the given queries of every data provider out of merged response.
+     */
+    private AggregationResponse select(final AggregationResponse merged, final Map<String, Set<String>> queries) {
+        final Map<String, Map<String, ?>> values = new LinkedHashMap<>();
+        merged.getValues().forEach(
+                (providerName, mergedValues) -> values.put(providerName, select(mergedValues, queries.get(providerName)))
+        );
+
+        return new AggregationResponse(values);
+    }
+
+    /**
+     * Picks values of the given queries, values may be null, so they are not collected by Collectors.toMap().
+     */
+    private <V> Map<String, V> select(final Map<String, V> values, final Set<String> queries) {
+        final Map<String, V> selected = new HashMap<>();
+        if (queries != null) {
+            queries.forEach(query -> selected.put(query, values.get(query)));
+        }
+
+        return selected;
+    }
+
+    private Map<String, Object> collectCompleted(final List<? extends QueryComputation<?>> queryComputations) {
+        final Map<String, Object> response = Maps.newHashMapWithExpectedSize(queryComputations.size());
+
+        for (var computation : queryComputations) {
+            response.putIfAbsent(
+                    computation.getQuery(),
+                    computation
+                            .getResponseHandling()
+                            .getNow(null)
+            );
+        }
+
+        return response;
+    }
+
     /**
      * Attempts to get completed value.
      * Otherwise returns map with empty values for all original queries.
@@ -87,8 +470,8 @@ public class AggregationService {
      * In practice when this method is called - all futures are already completed (thanks to allOf()).
      * So this code is only to comply to proper compilation error handling and most probably is not reachable.
      */
-    private <V> Map<String, V> getOrNoValuesForAll(
-            final CompletableFuture<Map<String, V>> computingResponses,
+    private Map<String, Object> getOrNoValuesForAll(
+            final CompletableFuture<Map<String, Object>> computingResponses,
             final Collection<String> queries
     ) {
         try {
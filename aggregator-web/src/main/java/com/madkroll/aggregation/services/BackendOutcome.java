@@ -0,0 +1,22 @@
+package com.madkroll.aggregation.services;
+
+/**
+ * Outcome of single backend call, retries are separate calls.
+ */
+public enum BackendOutcome {
+
+    SUCCESS,
+
+    // failed to connect or responded with error status
+    FAILURE,
+
+    // response is not a valid JSON object, never retried
+    MALFORMED,
+
+    // backend timeout passed before response is over, or hedging call of the same batch responded first
+    CANCELLED;
+
+    public static BackendOutcome of(final Throwable failure) {
+        return failure instanceof MalformedResponseException ? MALFORMED : FAILURE;
+    }
+}
@@ -1,142 +1,289 @@
 package com.madkroll.aggregation.services;
 
-import com.google.common.collect.ImmutableList;
-import lombok.AllArgsConstructor;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import lombok.extern.log4j.Log4j2;
-import org.springframework.util.CollectionUtils;
 
-import java.util.*;
-import java.util.concurrent.CompletableFuture;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
 
 @Log4j2
-@AllArgsConstructor
-public class BatchBufferingService<T> {
+public class BatchBufferingService<T> implements BatchingService<T> {
 
-    // complete batch once it is full
-    private final int batchCapacity;
+    // resolution of batch timeouts, any timeout is rounded up to the next tick
+    private static final long TIMER_TICK_IN_MILLIS = 10;
 
-    // complete batch in timeout if it's not full yet
-    private final int batchTimeoutInSeconds;
+    // layout of batch state, see Batch
+    private static final long CLAIMED_MASK = (1L << 31) - 1;
+    private static final int WRITTEN_SHIFT = 31;
+    private static final long WRITTEN_UNIT = 1L << WRITTEN_SHIFT;
+    private static final long SEALED = Long.MIN_VALUE;
 
-    // this must be thread-safe queue only
-    private final Queue<CompletableFuture<T>> availableComputationSlots;
+    // seal time of batch the first writer has not scheduled yet
+    private static final long NOT_SCHEDULED = Long.MIN_VALUE;
+
+    private static final VarHandle BATCH_STATE;
+
+    static {
+        try {
+            BATCH_STATE = MethodHandles.lookup().findVarHandle(BatchBufferingService.Batch.class, "state", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // capacity and linger time of every new batch
+    private final BatchSizing batchSizing;
+
+    // System.nanoTime() deadline of item, null if items have no deadlines
+    private final ToLongFunction<T> deadlineNanosOf;
+
+    // time left to item deadline once batch is sealed anyway, so backend call still fits in
+    private final long flushBudgetNanos;
+
+    private final ProviderMetrics metrics;
+
+    // once batch is complete, handles it's further processing
+    private final Consumer<List<T>> batchConsumer;
+
+    // expires incomplete batches, single timer entry per batch
+    private final Timer batchTimer;
+
+    // batch currently accepting new items
+    private final AtomicReference<Batch> openBatch;
+
+    public BatchBufferingService(
+            final int batchCapacity,
+            final long batchTimeoutInMillis,
+            final Consumer<List<T>> batchConsumer
+    ) {
+        this(BatchSizing.fixed(batchCapacity, batchTimeoutInMillis), batchConsumer);
+    }
+
+    public BatchBufferingService(final BatchSizing batchSizing, final Consumer<List<T>> batchConsumer) {
+        this(batchSizing, null, 0, ProviderMetrics.disabled(), batchConsumer);
+    }
 
     /**
-     * Opens new immutable batch of completable futures per each item in the given chunk.
-     * Batch has a fixed capacity.
+     * Deadline-aware service seals batch earlier than its linger time
+     * once any item has no more than flush budget left to its deadline.
+     */
+    public BatchBufferingService(
+            final BatchSizing batchSizing,
+            final ToLongFunction<T> deadlineNanosOf,
+            final long flushBudgetInMillis,
+            final ProviderMetrics metrics,
+            final Consumer<List<T>> batchConsumer
+    ) {
+        this.batchSizing = batchSizing;
+        this.deadlineNanosOf = deadlineNanosOf;
+        this.flushBudgetNanos = TimeUnit.MILLISECONDS.toNanos(flushBudgetInMillis);
+        this.metrics = metrics;
+        this.batchConsumer = batchConsumer;
+        this.batchTimer = new HashedWheelTimer(
+                new DefaultThreadFactory("batch-timer", true),
+                TIMER_TICK_IN_MILLIS,
+                TimeUnit.MILLISECONDS
+        );
+        this.openBatch = new AtomicReference<>(new Batch());
+    }
+
+    /**
+     * Appends item to the currently open batch.
      * <p>
-     * There are such scenarios possible:
+     * Batch is sealed and handed over to the batch consumer by whichever comes first:
      * <ul>
-     *     <li>if no chunks submitted - returns empty list</li>
-     *     <li>if submitted chunk has more items than batch capacity, then throws IllegalArgumentException</li>
-     *     <li>if number of items inside given chunk is equal to batch capacity, then builds new complete batch of them</li>
-     *     <li>if submitted chunk has less items than batch capacity, then:
-     *          <ul>
-     *              <li>first it tries to feed items into other awaiting batches</li>
-     *              <li>if no more items left, returns empty list</li>
-     *              <li>if still any items left, builds new incomplete batch of them and publishes available slots,
-     *              so other parallel calls are able to feed into these slots</li>
-     *          </ul>
-     *     </li>
+     *     <li>the thread appending the last item up to batch capacity</li>
+     *     <li>the timer, once batch linger time passed since the first item was appended</li>
+     *     <li>the timer, once any item of deadline-aware service has just flush budget left to its deadline</li>
      * </ul>
+     * Once open batch is sealed, the next appending thread opens a new one.
+     * Never blocks, sealed batch may be handed over on the calling thread.
      *
-     * Slots are open for fixed time threshold. Once awaiting time exceeded - completes slot with no value provided.
-     *
-     * @param chunk items to build batch from
-     * @return batch of completable futures per each item from the given chunk
+     * @param item item to be processed as part of the next batch
      */
-    public List<CompletableFuture<T>> prepareBatch(final List<T> chunk) {
-        if (CollectionUtils.isEmpty(chunk)) {
-            log.debug("Chunk is empty. Ignore.");
-            return ImmutableList.of();
+    @Override
+    public void submit(final T item) {
+        Batch batch = openBatch.get();
+        // allocated once closed batch is observed and reused till it's installed
+        Batch nextBatch = null;
+        while (!batch.tryAppend(item)) {
+            if (nextBatch == null) {
+                nextBatch = new Batch();
+            }
+            if (openBatch.compareAndSet(batch, nextBatch)) {
+                batch = nextBatch;
+                nextBatch = null;
+            } else {
+                batch = openBatch.get();
+            }
         }
+    }
 
-        if (chunk.size() > batchCapacity) {
-            throw new IllegalArgumentException("Submitted chunk is larger than buffer capacity: " + batchCapacity);
-        }
+    /**
+     * Stops batch timer. Incomplete batches are not sealed by timeout anymore.
+     */
+    @Override
+    public void shutdown() {
+        batchTimer.stop();
+    }
 
-        if (chunk.size() == batchCapacity) {
-            log.debug("Batch is complete. No buffering required.");
-            return completeBatch(chunk);
+    private void dispatch(final Batch batch) {
+        log.debug("Batch is sealed with {} of {} items", batch.size(), batch.capacity);
+        metrics.recordBatchSealed(batch.size(), batch.capacity);
+        try {
+            batchConsumer.accept(batch);
+        } catch (Exception e) {
+            log.error("Unable to hand over sealed batch", e);
         }
+    }
+
+    /**
+     * Array-backed batch accumulating items lock-free.
+     * <p>
+     * Whole state is packed into single long, so every transition is one CAS:
+     * <ul>
+     *     <li>lower 31 bits - number of slots claimed by appending threads</li>
+     *     <li>next 31 bits - number of claimed slots already written</li>
+     *     <li>sign bit - batch is sealed by timeout</li>
+     * </ul>
+     * Batch is complete once it's closed (full or sealed) and all claimed slots are written.
+     * Exactly one thread observes the transition into complete state and dispatches the batch.
+     * <p>
+     * Batch itself is the read-only list handed over to the consumer and the timer task expiring it,
+     * so every batch allocates its items array and a single timer entry besides itself.
+     */
+    private final class Batch extends AbstractList<T> implements TimerTask {
+
+        private final int capacity = batchSizing.capacity();
 
-        final List<T> leftComputations = feed(chunk);
-        if (leftComputations.isEmpty()) {
-            log.debug("After feeding no more queries left. All will be processed by parallel batches.");
-            return ImmutableList.of();
+        private final Object[] items = new Object[capacity];
+
+        // earliest System.nanoTime() the timer is scheduled to seal batch at
+        private volatile long sealAtNanos = NOT_SCHEDULED;
+
+        private volatile long state;
+
+        private volatile int size;
+
+        private volatile Timeout timeout;
+
+        private boolean tryAppend(final T item) {
+            long current;
+            do {
+                current = state;
+                if (isClosed(current)) {
+                    return false;
+                }
+            } while (!BATCH_STATE.compareAndSet(this, current, current + 1));
+
+            final int index = claimed(current);
+            items[index] = item;
+
+            if (index == 0) {
+                final long now = System.nanoTime();
+                final long lingerNanos = TimeUnit.MILLISECONDS.toNanos(batchSizing.lingerInMillis(capacity));
+                scheduleSeal(Math.min(lingerNanos, untilFlushNanos(item, now)), now);
+            } else if (deadlineNanosOf != null) {
+                final long now = System.nanoTime();
+                final long untilFlushNanos = untilFlushNanos(item, now);
+                final long scheduledAtNanos = sealAtNanos;
+                // first writer may still be scheduling, timer scheduled later is left to fire, sealing is idempotent
+                if (scheduledAtNanos == NOT_SCHEDULED || now + untilFlushNanos - scheduledAtNanos < 0) {
+                    scheduleSeal(untilFlushNanos, now);
+                }
+            }
+
+            final long written = (long) BATCH_STATE.getAndAdd(this, WRITTEN_UNIT) + WRITTEN_UNIT;
+            if (isComplete(written)) {
+                cancelTimeout();
+                complete(claimed(written));
+            }
+
+            return true;
         }
 
-        return ImmutableList.<CompletableFuture<T>>builder()
-                .addAll(leftComputations.stream().map(CompletableFuture::completedFuture).collect(Collectors.toList()))
-                .addAll(provideSlots(batchCapacity - leftComputations.size()))
-                .build();
-    }
+        /**
+         * Seals batch on timeout, so no more items can be appended.
+         */
+        @Override
+        public void run(final Timeout expired) {
+            long current;
+            do {
+                current = state;
+                if (isClosed(current)) {
+                    return;
+                }
+            } while (!BATCH_STATE.compareAndSet(this, current, current | SEALED));
 
-    /**
-     * Turns items from provided chunk into completed completable futures.
-     * */
-    private List<CompletableFuture<T>> completeBatch(final List<T> chunk) {
-        return ImmutableList.copyOf(
-                chunk.stream()
-                        .map(CompletableFuture::completedFuture)
-                        .collect(Collectors.toList())
-        );
-    }
+            // slots claimed, but not yet written will be completed by their writers
+            if (isComplete(current | SEALED)) {
+                complete(claimed(current));
+            }
+        }
 
-    /**
-     * Attempts to feed as many items from the given chunk as possible to available slots of other awaiting batches.
-     * Returns new chunk with left items.
-     * */
-    private List<T> feed(final List<T> chunk) {
-        final List<T> leftItems = new ArrayList<>(chunk);
-
-        final Iterator<T> chunkIterator = leftItems.iterator();
-        while (chunkIterator.hasNext()) {
-            if (feed(chunkIterator.next()).isEmpty()) {
-                break;
+        private long untilFlushNanos(final T item, final long now) {
+            if (deadlineNanosOf == null) {
+                return Long.MAX_VALUE;
             }
 
-            // forget about this item, another batch takes care of it now
-            chunkIterator.remove();
+            return Math.max(0, deadlineNanosOf.applyAsLong(item) - flushBudgetNanos - now);
         }
 
-        return leftItems;
-    }
+        private void scheduleSeal(final long delayNanos, final long now) {
+            sealAtNanos = now + delayNanos;
+            timeout = batchTimer.newTimeout(this, delayNanos, TimeUnit.NANOSECONDS);
+        }
 
-    /**
-     * Feeds item into first available slot provided by any parallel incomplete batch.
-     * Returns optional of future promising completed value once batch provided slot is processed.
-     */
-    private Optional<CompletableFuture<T>> feed(final T queryComputations) {
-        CompletableFuture<T> freeSlot;
-        while ((freeSlot = availableComputationSlots.poll()) != null) {
-            log.debug("Queue: one slot is taken");
-            if (freeSlot.complete(queryComputations)) {
-
-                log.debug("Queue: feeding to slot has been successful");
-                return Optional.of(freeSlot);
+        private void complete(final int completedSize) {
+            batchSizing.recordBatch(completedSize, System.nanoTime());
+            size = completedSize;
+            dispatch(this);
+        }
+
+        private void cancelTimeout() {
+            final Timeout scheduled = timeout;
+            if (scheduled != null) {
+                scheduled.cancel();
             }
+        }
 
-            log.debug("Queue: taken slot is completed already");
+        private boolean isClosed(final long state) {
+            return (state & SEALED) != 0 || claimed(state) == capacity;
         }
 
-        log.debug("Queue: no slots available");
-        return Optional.empty();
-    }
+        private boolean isComplete(final long state) {
+            return isClosed(state) && claimed(state) == written(state);
+        }
 
-    /**
-     * Provides available slots that other incomplete batches can feed into.
-     * If none of slots are taken withing time threshold closes slot by completing corresponding future with no value provided
-     */
-    private List<CompletableFuture<T>> provideSlots(final int availableSlotsNumber) {
-        log.debug("Queue: provide available slots: {}", availableSlotsNumber);
-        return IntStream.range(0, availableSlotsNumber)
-                .mapToObj(next -> new CompletableFuture<T>())
-                .map(slot -> slot.completeOnTimeout(null, batchTimeoutInSeconds, TimeUnit.SECONDS))
-                .peek(availableComputationSlots::offer)
-                .collect(Collectors.toList());
+        private int claimed(final long state) {
+            return (int) (state & CLAIMED_MASK);
+        }
+
+        private int written(final long state) {
+            return (int) ((state & ~SEALED) >>> WRITTEN_SHIFT);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(final int index) {
+            Objects.checkIndex(index, size);
+            return (T) items[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
     }
 }
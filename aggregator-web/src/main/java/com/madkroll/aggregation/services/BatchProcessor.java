@@ -1,64 +1,194 @@
 package com.madkroll.aggregation.services;
 
-import lombok.AllArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.util.CollectionUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 @Log4j2
-@AllArgsConstructor
 public class BatchProcessor<V> {
 
     private final DataProviderClient<V> dataProviderClient;
 
+    // collects queries and sends batch to backend
+    private final Executor batchPreparationExecutor;
+
+    // completes computations with received values
+    private final Scheduler responseFanOutScheduler;
+
+    private final ProviderMetrics metrics;
+
+    public BatchProcessor(
+            final DataProviderClient<V> dataProviderClient,
+            final Executor batchPreparationExecutor,
+            final Executor responseFanOutExecutor,
+            final ProviderMetrics metrics
+    ) {
+        this.dataProviderClient = dataProviderClient;
+        this.batchPreparationExecutor = batchPreparationExecutor;
+        this.responseFanOutScheduler = Schedulers.fromExecutor(responseFanOutExecutor);
+        this.metrics = metrics;
+    }
+
     /**
      * Processes single batch:
      * - collects queries
      * - retrieves data per query
-     * - submits received responses into corresponding completable future
+     * - completes every computation as soon as its value is parsed, the rest once response is over
+     * Once batch preparation is rejected by its executor, completes the whole batch with no value.
      */
-    public CompletableFuture<Void> process(final List<CompletableFuture<QueryComputation<V>>> completableFutures) {
-        if (CollectionUtils.isEmpty(completableFutures)) {
+    public CompletableFuture<Void> process(final List<QueryComputation<V>> batch) {
+        if (CollectionUtils.isEmpty(batch)) {
             return CompletableFuture.completedFuture(null);
         }
 
-        return CompletableFuture
-                // wait until batch is full or timeout happened
-                .allOf(completableFutures.toArray(new CompletableFuture[0]))
-                .thenApplyAsync(
-                        whenNextBatchAvailable -> {
-                            // collect all queries from batch
-                            return completableFutures.stream()
-                                    .map(future -> future.getNow(null))
-                                    .filter(Objects::nonNull)
-                                    .map(QueryComputation::getQuery)
-                                    .collect(Collectors.toList());
+        markEach(batch, QueryComputation::markDispatched);
+        try {
+            return CompletableFuture
+                    // collect all queries from batch, releasing the thread which sealed the batch
+                    .supplyAsync(() -> toQueries(batch), batchPreparationExecutor)
+                    .thenComposeAsync(
+                            queries ->
+                                    completeEach(
+                                            batch,
+                                            () -> dataProviderClient.streamByHttp(queries, circuitGenerationOf(batch)),
+                                            entries -> entries.publishOn(responseFanOutScheduler)
+                                    ).toFuture(),
+                            batchPreparationExecutor
+                    )
+                    // rejected sending stage completes dependent future exceptionally
+                    .exceptionally(throwable -> {
+                        completeRejected(batch, throwable);
+                        return null;
+                    });
+        } catch (RejectedExecutionException e) {
+            completeRejected(batch, e);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * Processes single batch reactively, the same way as {@link #process(List)}.
+     * Computations are completed on the thread delivering the response, without handing it over to another pool.
+     */
+    public Mono<Void> processReactive(final List<QueryComputation<V>> batch) {
+        if (CollectionUtils.isEmpty(batch)) {
+            return Mono.empty();
+        }
+
+        markEach(batch, QueryComputation::markDispatched);
+        return completeEach(
+                batch,
+                () -> dataProviderClient.streamByHttp(toQueries(batch), circuitGenerationOf(batch)),
+                UnaryOperator.identity()
+        );
+    }
+
+    /**
+     * Batch is admitted under the latest circuit breaker generation of its computations,
+     * so batch carrying a half-open probe accounts its outcome.
+     */
+    private long circuitGenerationOf(final List<QueryComputation<V>> batch) {
+        long circuitGeneration = 0;
+        for (QueryComputation<V> computation : batch) {
+            circuitGeneration = Math.max(circuitGeneration, computation.getCircuitGeneration());
+        }
+
+        return circuitGeneration;
+    }
+
+    private List<String> toQueries(final List<QueryComputation<V>> batch) {
+        return batch.stream()
+                .map(QueryComputation::getQuery)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Completes computations with values as they are received, after handing them over to response fan-out.
+     * Once response is over or failed, completes the rest with no value.
+     */
+    private Mono<Void> completeEach(
+            final List<QueryComputation<V>> batch,
+            final Supplier<Flux<Map.Entry<String, V>>> response,
+            final UnaryOperator<Flux<Map.Entry<String, V>>> fanOut
+    ) {
+        metrics.recordBatch(batch.size());
+        final Map<String, List<QueryComputation<V>>> computationsByQuery =
+                batch.stream().collect(Collectors.groupingBy(QueryComputation::getQuery));
+
+        return Flux.defer(() -> {
+            markEach(batch, QueryComputation::markRequested);
+            return response.get();
+        })
+                .doOnNext(entry -> markEach(computationsOf(computationsByQuery, entry), QueryComputation::markResponded))
+                .transform(fanOut)
+                .doOnNext(
+                        entry -> {
+                            final List<QueryComputation<V>> computations = computationsOf(computationsByQuery, entry);
+                            markEach(computations, QueryComputation::markCompleted);
+                            computations.forEach(
+                                    computation -> computation.getResponseCalculation().complete(entry.getValue())
+                            );
                         }
                 )
-                .thenComposeAsync(
-                        queries ->
-                                dataProviderClient
-                                        .retrieveByHttp(queries)
-                                        .toFuture()
+                .onErrorResume(
+                        throwable -> {
+                            log.debug("Unable to retrieve batch of {} queries", batch.size(), throwable);
+                            return Flux.empty();
+                        }
                 )
-                .exceptionally(throwable -> Map.of())
-                .thenAcceptAsync(
-                        // parse response into map
-                        // complete value to corresponding future
-                        response ->
-                                completableFutures.stream()
-                                        .map(future -> future.getNow(null))
-                                        .filter(Objects::nonNull)
-                                        .forEach(
-                                                computation ->
-                                                        computation.getResponseCalculation()
-                                                                .complete(response.get(computation.getQuery()))
-                                        )
-                );
+                .then(Mono.fromRunnable(() -> completeWithNoValue(batch)));
+    }
+
+    private void completeRejected(final List<QueryComputation<V>> batch, final Throwable throwable) {
+        log.warn("Batch of {} queries is not processed, completing it with no value", batch.size(), throwable);
+        completeWithNoValue(batch);
+    }
+
+    /**
+     * Completes computations not completed yet with no value, no effect on computations already completed.
+     */
+    private void completeWithNoValue(final List<QueryComputation<V>> batch) {
+        final long now = System.nanoTime();
+        for (QueryComputation<V> computation : batch) {
+            if (!computation.getResponseCalculation().isDone()) {
+                computation.markResponded(now);
+                computation.markCompleted(now);
+            }
+            computation.getResponseCalculation().complete(null);
+        }
+    }
+
+    private List<QueryComputation<V>> computationsOf(
+            final Map<String, List<QueryComputation<V>>> computationsByQuery,
+            final Map.Entry<String, V> entry
+    ) {
+        return computationsByQuery.getOrDefault(entry.getKey(), List.of());
+    }
+
+    /**
+     * Marks pipeline stage reached by all given computations at once.
+     */
+    private void markEach(final List<QueryComputation<V>> computations, final ObjLongConsumer<QueryComputation<V>> mark) {
+        if (computations.isEmpty()) {
+            return;
+        }
+
+        final long now = System.nanoTime();
+        for (QueryComputation<V> computation : computations) {
+            mark.accept(computation, now);
+        }
     }
 }
@@ -0,0 +1,141 @@
+package com.madkroll.aggregation.services;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides capacity and linger time of every new batch.
+ * <p>
+ * Fixed sizing always uses configured capacity and timeout.
+ * Adaptive sizing follows arrival rate of items, smoothed over sealed batches.
+ * Rate is measured as items of sealed batch per time since the previous batch was sealed,
+ * so single item sealed after short linger does not look like a burst:
+ * <ul>
+ *     <li>batch expected to fill up within timeout lingers up to timeout, it's sealed by capacity anyway</li>
+ *     <li>batch not expected to fill up lingers just for minimal interval between batches,
+ *     waiting longer would delay its items while collecting only a few more</li>
+ *     <li>capacity grows up to max capacity once arrival rate would seal batches more often than
+ *     max batches per second, so backend calls per second stay bounded</li>
+ * </ul>
+ */
+public class BatchSizing {
+
+    // weight of the latest sealed batch in smoothed arrival rate
+    private static final double SMOOTHING = 0.2;
+
+    private static final long NOT_SEALED = Long.MIN_VALUE;
+
+    private final boolean adaptive;
+
+    private final int capacity;
+
+    private final int maxCapacity;
+
+    private final long timeoutInMillis;
+
+    // shortest linger of batch not expected to fill up, bounds backend calls per second
+    private final long minIntervalInMillis;
+
+    // items per millisecond stored as double bits, updated once per sealed batch
+    private final AtomicLong arrivalRate = new AtomicLong(Double.doubleToRawLongBits(0));
+
+    // System.nanoTime() the latest batch was sealed at, NOT_SEALED until the first one is
+    private final AtomicLong lastSealedAtNanos = new AtomicLong(NOT_SEALED);
+
+    private BatchSizing(
+            final boolean adaptive,
+            final int capacity,
+            final int maxCapacity,
+            final long timeoutInMillis,
+            final long minIntervalInMillis
+    ) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Batch capacity must be positive: " + capacity);
+        }
+
+        if (maxCapacity < capacity) {
+            throw new IllegalArgumentException("Batch max capacity must not be less than capacity: " + maxCapacity);
+        }
+
+        this.adaptive = adaptive;
+        this.capacity = capacity;
+        this.maxCapacity = maxCapacity;
+        this.timeoutInMillis = timeoutInMillis;
+        this.minIntervalInMillis = Math.min(minIntervalInMillis, timeoutInMillis);
+    }
+
+    public static BatchSizing fixed(final int capacity, final long timeoutInMillis) {
+        return new BatchSizing(false, capacity, capacity, timeoutInMillis, timeoutInMillis);
+    }
+
+    public static BatchSizing adaptive(
+            final int capacity,
+            final int maxCapacity,
+            final long timeoutInMillis,
+            final int maxBatchesPerSecond
+    ) {
+        if (maxBatchesPerSecond < 1) {
+            throw new IllegalArgumentException("Max batches per second must be positive: " + maxBatchesPerSecond);
+        }
+
+        return new BatchSizing(true, capacity, maxCapacity, timeoutInMillis, 1000L / maxBatchesPerSecond);
+    }
+
+    /**
+     * @return capacity of the next batch to be opened
+     */
+    public int capacity() {
+        if (!adaptive) {
+            return capacity;
+        }
+
+        final double itemsPerInterval = arrivalRate() * minIntervalInMillis;
+        return (int) Math.max(capacity, Math.min(maxCapacity, Math.ceil(itemsPerInterval)));
+    }
+
+    /**
+     * @return how long batch of the given capacity waits for more items since its first one
+     */
+    public long lingerInMillis(final int batchCapacity) {
+        if (!adaptive || arrivalRate() * timeoutInMillis >= batchCapacity) {
+            return timeoutInMillis;
+        }
+
+        return minIntervalInMillis;
+    }
+
+    /**
+     * Accounts arrival rate observed by sealed batch.
+     * Items of batch arrived since the previous batch was sealed, idle time in between included.
+     * The first sealed batch only starts the measurement.
+     *
+     * @param size          number of items in batch
+     * @param sealedAtNanos System.nanoTime() batch was sealed at
+     */
+    public void recordBatch(final int size, final long sealedAtNanos) {
+        if (!adaptive) {
+            return;
+        }
+
+        final long previousSealedAtNanos = lastSealedAtNanos.getAndSet(sealedAtNanos);
+        if (previousSealedAtNanos == NOT_SEALED) {
+            return;
+        }
+
+        // batches sealed at once are accounted as sealed a millisecond apart
+        final long elapsedNanos = sealedAtNanos - previousSealedAtNanos;
+        final double elapsedInMillis = Math.max(elapsedNanos, TimeUnit.MILLISECONDS.toNanos(1)) / 1e6;
+        final double observed = size / elapsedInMillis;
+
+        long current;
+        double smoothed;
+        do {
+            current = arrivalRate.get();
+            smoothed = SMOOTHING * observed + (1 - SMOOTHING) * Double.longBitsToDouble(current);
+        } while (!arrivalRate.compareAndSet(current, Double.doubleToRawLongBits(smoothed)));
+    }
+
+    private double arrivalRate() {
+        return Double.longBitsToDouble(arrivalRate.get());
+    }
+}
@@ -0,0 +1,13 @@
+package com.madkroll.aggregation.services;
+
+public enum BatchingMode {
+
+    // batch is sealed once full or once timeout passed, see BatchBufferingService
+    ACCUMULATOR,
+
+    // batch is flushed once full or once ring buffer is drained, see DisruptorBatchingService
+    DISRUPTOR,
+
+    // batch is emitted once full or once timeout passed by Reactor bufferTimeout, see ReactorBatchingService
+    REACTOR
+}
@@ -0,0 +1,19 @@
+package com.madkroll.aggregation.services;
+
+/**
+ * Groups submitted items into batches and hands every complete batch over for processing.
+ */
+public interface BatchingService<T> {
+
+    /**
+     * Submits item to be processed as part of one of the next batches.
+     *
+     * @throws AdmissionRejectedException if there is no room for the item right now, it's never processed then
+     */
+    void submit(T item);
+
+    /**
+     * Releases resources held by the service. Items submitted after shutdown are not processed.
+     */
+    void shutdown();
+}
@@ -0,0 +1,26 @@
+package com.madkroll.aggregation.services;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Decodes number as BigDecimal right from its textual representation, so no precision is lost on the way.
+ */
+public class BigDecimalValueDecoder implements ValueDecoder<BigDecimal> {
+
+    @Override
+    public BigDecimal decode(final JsonParser parser) throws IOException {
+        switch (parser.currentToken()) {
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDecimalValue();
+            case VALUE_NULL:
+                return null;
+            default:
+                throw new JsonParseException(parser, "Expected number, but got " + parser.currentToken());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.madkroll.aggregation.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cached value with its lifecycle, all moments are System.nanoTime() based:
+ * <ul>
+ *     <li>fresh until refresh-ahead moment</li>
+ *     <li>still fresh until stale moment, but refreshed ahead if read often</li>
+ *     <li>stale until expiration moment - served, but refreshed on read</li>
+ *     <li>expired - not served anymore</li>
+ * </ul>
+ */
+@Getter
+@AllArgsConstructor
+public class CachedResponse<V> {
+
+    // null if provider had no value for the query
+    private final V value;
+
+    // hot entry is refreshed ahead from this moment on
+    private final long refreshAheadAtNanos;
+
+    // entry is served, but refreshed on every read from this moment on
+    private final long staleAtNanos;
+
+    // entry is not served from this moment on
+    private final long expiresAtNanos;
+
+    // reads served by this entry
+    private final AtomicInteger hits = new AtomicInteger();
+
+    // JSON of value, null until the first response served by this entry is written
+    @Getter(AccessLevel.NONE)
+    private final AtomicReference<SerializableString> json = new AtomicReference<>();
+
+    /**
+     * @return JSON of value, serialized by the given writer on the first call, racing callers may serialize it twice
+     */
+    public SerializableString toJson(final ObjectWriter writer) throws JsonProcessingException {
+        SerializableString serialized = json.get();
+        if (serialized == null) {
+            serialized = new SerializedString(writer.writeValueAsString(value));
+            json.set(serialized);
+        }
+
+        return serialized;
+    }
+
+    boolean isRefreshAheadDue(final long nowNanos) {
+        return nowNanos - refreshAheadAtNanos >= 0;
+    }
+
+    boolean isStale(final long nowNanos) {
+        return nowNanos - staleAtNanos >= 0;
+    }
+
+    boolean isExpired(final long nowNanos) {
+        return nowNanos - expiresAtNanos >= 0;
+    }
+}
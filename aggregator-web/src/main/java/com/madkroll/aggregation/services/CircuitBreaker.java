@@ -0,0 +1,251 @@
+package com.madkroll.aggregation.services;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stops calling backend of single data provider once it's failing or too slow.
+ * <p>
+ * States:
+ * <ul>
+ *     <li>closed - every query is submitted, outcomes of the last window of backend calls are accounted;
+ *     once share of failed or slow calls reaches its threshold, breaker opens</li>
+ *     <li>open - queries are completed with no value right away, without batching or backend calls</li>
+ *     <li>half-open - once open duration passed, just a few probe queries are submitted,
+ *     the first backend call completed closes the breaker if succeeded in time, otherwise opens it again</li>
+ * </ul>
+ * Every transition starts a new generation. Queries are admitted under the current one and outcome of backend call
+ * is accounted only if it's still current, so a call admitted before breaker opened never closes it while half-open.
+ */
+@Log4j2
+public class CircuitBreaker {
+
+    // returned instead of generation if query is not permitted
+    public static final long NOT_PERMITTED = -1;
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String providerName;
+
+    private final boolean enabled;
+
+    // number of the latest backend calls accounted, breaker never opens before window is filled up
+    private final int windowSize;
+
+    private final double failureRateThreshold;
+
+    private final double slowCallRateThreshold;
+
+    // call taking this long is slow, even if it succeeded
+    private final long slowCallNanos;
+
+    // breaker stays open this long before probing backend again
+    private final long openNanos;
+
+    private final int halfOpenProbes;
+
+    private volatile State state = State.CLOSED;
+
+    // incremented by every transition, before state changes
+    private volatile long generation;
+
+    // System.nanoTime() of the latest transition
+    private volatile long transitionedAtNanos = System.nanoTime();
+
+    // probe queries left to submit while half-open
+    private final AtomicInteger probesLeft = new AtomicInteger();
+
+    // flags of the latest calls, guarded by this
+    private final byte[] window;
+    private int nextCall;
+    private int calls;
+    private int failedCalls;
+    private int slowCalls;
+
+    private CircuitBreaker(
+            final String providerName,
+            final boolean enabled,
+            final int windowSize,
+            final double failureRateThreshold,
+            final double slowCallRateThreshold,
+            final long slowCallInMillis,
+            final long openInMillis,
+            final int halfOpenProbes
+    ) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Circuit breaker window size must be positive: " + windowSize);
+        }
+
+        if (halfOpenProbes < 1) {
+            throw new IllegalArgumentException("Circuit breaker half-open probes must be positive: " + halfOpenProbes);
+        }
+
+        this.providerName = providerName;
+        this.enabled = enabled;
+        this.windowSize = windowSize;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallInMillis);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openInMillis);
+        this.halfOpenProbes = halfOpenProbes;
+        this.window = new byte[windowSize];
+    }
+
+    public static CircuitBreaker disabled() {
+        return new CircuitBreaker("none", false, 1, 1, 1, Long.MAX_VALUE, 0, 1);
+    }
+
+    public static CircuitBreaker of(
+            final String providerName,
+            final int windowSize,
+            final double failureRateThreshold,
+            final double slowCallRateThreshold,
+            final long slowCallInMillis,
+            final long openInMillis,
+            final int halfOpenProbes
+    ) {
+        return new CircuitBreaker(
+                providerName,
+                true,
+                windowSize,
+                failureRateThreshold,
+                slowCallRateThreshold,
+                slowCallInMillis,
+                openInMillis,
+                halfOpenProbes
+        );
+    }
+
+    /**
+     * Should be called only once query is about to be submitted, as it takes one of the probes while half-open.
+     *
+     * @return generation query is admitted under, {@link #NOT_PERMITTED} if it has to be completed with no value
+     * right away
+     */
+    public long tryAcquirePermission() {
+        final long admittedUnder = generation;
+        if (!enabled || state == State.CLOSED) {
+            return admittedUnder;
+        }
+
+        // open duration passed, or probes submitted while half-open brought no outcome, so probing again
+        if (System.nanoTime() - transitionedAtNanos - openNanos >= 0) {
+            toHalfOpen();
+        }
+
+        final long probedUnder = generation;
+        return state == State.HALF_OPEN && tryTakeProbe() ? probedUnder : NOT_PERMITTED;
+    }
+
+    /**
+     * Gives back probe taken for query which is not submitted after all, if its generation is still current.
+     */
+    public synchronized void releasePermission(final long admittedUnder) {
+        if (enabled && state == State.HALF_OPEN && generation == admittedUnder) {
+            probesLeft.incrementAndGet();
+        }
+    }
+
+    /**
+     * Accounts outcome of single backend call, retries are separate calls.
+     *
+     * @param elapsedNanos time since call started till its outcome
+     * @param admittedUnder generation the latest query of the call is admitted under, outcome of older one is ignored
+     */
+    public synchronized void recordCall(final BackendOutcome outcome, final long elapsedNanos, final long admittedUnder) {
+        if (!enabled || admittedUnder != generation) {
+            return;
+        }
+
+        final boolean failed = outcome == BackendOutcome.FAILURE || outcome == BackendOutcome.MALFORMED;
+        // call cancelled once backend timeout passed is slow, while the one losing to its hedge is not
+        final boolean slow = elapsedNanos >= slowCallNanos;
+
+        switch (state) {
+            case HALF_OPEN:
+                if (failed || slow) {
+                    transitionTo(State.OPEN);
+                } else {
+                    transitionTo(State.CLOSED);
+                }
+                return;
+            case OPEN:
+                // nothing is admitted while open
+                return;
+            default:
+                accountCall((byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0)));
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    private void accountCall(final byte flags) {
+        if (calls == windowSize) {
+            final byte evicted = window[nextCall];
+            failedCalls -= evicted & FAILED;
+            slowCalls -= (evicted & SLOW) >> 1;
+        } else {
+            calls++;
+        }
+
+        window[nextCall] = flags;
+        failedCalls += flags & FAILED;
+        slowCalls += (flags & SLOW) >> 1;
+        nextCall = (nextCall + 1) % windowSize;
+
+        if (calls == windowSize
+                && (failedCalls >= failureRateThreshold * windowSize || slowCalls >= slowCallRateThreshold * windowSize)) {
+            log.warn(
+                    "Circuit breaker of {} opens, {} failed and {} slow of the last {} backend calls",
+                    providerName, failedCalls, slowCalls, windowSize
+            );
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private synchronized void toHalfOpen() {
+        if (state != State.CLOSED && System.nanoTime() - transitionedAtNanos - openNanos >= 0) {
+            transitionTo(State.HALF_OPEN);
+        }
+    }
+
+    private void transitionTo(final State next) {
+        if (next != state) {
+            log.info("Circuit breaker of {} transitions from {} to {}", providerName, state, next);
+        }
+
+        generation++;
+        state = next;
+        transitionedAtNanos = System.nanoTime();
+        probesLeft.set(halfOpenProbes);
+        calls = 0;
+        nextCall = 0;
+        failedCalls = 0;
+        slowCalls = 0;
+    }
+
+    private boolean tryTakeProbe() {
+        int current;
+        do {
+            current = probesLeft.get();
+            if (current == 0) {
+                return false;
+            }
+        } while (!probesLeft.compareAndSet(current, current - 1));
+
+        return true;
+    }
+}
@@ -1,65 +1,211 @@
 package com.madkroll.aggregation.services;
 
-import com.google.common.collect.Lists;
-import lombok.AllArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.util.CollectionUtils;
 
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
 @Log4j2
-@AllArgsConstructor
 public class DataProvider<V> {
 
-    // submit chunks with size not more than batch capacity
-    private final int batchCapacity;
-
     // complete computation anyway once timeout passed and no result yet
     private final int queryComputationTimeoutInSeconds;
 
-    // service managing batch buffering and processing
-    private final BatchBufferingService<QueryComputation<V>> batchBufferingService;
+    // service accumulating computations into batches and handing them over for processing
+    private final BatchingService<QueryComputation<V>> batchingService;
+
+    // fresh responses are served without batching
+    private final ResponseCache<V> responseCache;
+
+    // computations submitted, but not completed yet, so parallel requests for the same query can join them
+    private final ConcurrentMap<String, QueryComputation<V>> inFlightComputations = new ConcurrentHashMap<>();
+
+    // bounds submitted computations, so excess load is rejected instead of queuing
+    private final AdmissionLimit admissionLimit;
+
+    // while open, queries are completed with no value right away
+    private final CircuitBreaker circuitBreaker;
 
-    // once batch is ready, handles it's further processing
-    private final BatchProcessor<V> batchProcessor;
+    private final ProviderMetrics metrics;
+
+    public DataProvider(
+            final int queryComputationTimeoutInSeconds,
+            final BatchingService<QueryComputation<V>> batchingService,
+            final ResponseCache<V> responseCache,
+            final ProviderMetrics metrics
+    ) {
+        this(
+                queryComputationTimeoutInSeconds,
+                batchingService,
+                responseCache,
+                AdmissionLimit.unlimited(),
+                CircuitBreaker.disabled(),
+                metrics
+        );
+    }
+
+    public DataProvider(
+            final int queryComputationTimeoutInSeconds,
+            final BatchingService<QueryComputation<V>> batchingService,
+            final ResponseCache<V> responseCache,
+            final AdmissionLimit admissionLimit,
+            final CircuitBreaker circuitBreaker,
+            final ProviderMetrics metrics
+    ) {
+        this.queryComputationTimeoutInSeconds = queryComputationTimeoutInSeconds;
+        this.batchingService = batchingService;
+        this.responseCache = responseCache;
+        this.admissionLimit = admissionLimit;
+        this.circuitBreaker = circuitBreaker;
+        this.metrics = metrics;
+        metrics.gaugeInFlightComputations(inFlightComputations);
+        metrics.gaugeAdmissionLimit(admissionLimit);
+        metrics.gaugeCircuitState(circuitBreaker);
+    }
 
     /**
      * Asynchronously retrieving data from corresponding data provider.
+     * <p>
+     * Per each query:
+     * <ul>
+     *     <li>if response is cached and still fresh, returns computation completed with it</li>
+     *     <li>if cached response is stale or hot one is about to become stale, returns computation completed with it
+     *     and refreshes it in background via the next batch</li>
+     *     <li>if the same query is already being computed for any other request, joins that computation,
+     *     so every query takes at most one batch slot at a time</li>
+     *     <li>otherwise submits new computation, complete batches are processed asynchronously</li>
+     * </ul>
+     * New computation is submitted only if admission limit is not reached yet, queries served from cache
+     * or joining computations in flight are always admitted.
+     * While circuit breaker is open, queries neither served from cache nor joining computation in flight are completed
+     * with no value right away, so only queries submitting new computation take probes while it's half-open.
+     *
+     * @throws AdmissionRejectedException if admission limit is reached, queries admitted so far are still computed
      */
     public List<QueryComputation<V>> fetch(final Set<String> queries) {
         if (CollectionUtils.isEmpty(queries)) {
             return List.of();
         }
 
-        final List<QueryComputation<V>> computations = toComputations(queries);
+        return queries.stream()
+                .map(this::computationFor)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return cache entry currently serving the query, null if none
+     */
+    public CachedResponse<V> peekCached(final String query) {
+        return responseCache.peek(query);
+    }
+
+    /**
+     * Stops batching, computations submitted afterwards complete with no value once timed out.
+     */
+    public void shutdown() {
+        batchingService.shutdown();
+    }
+
+    private QueryComputation<V> computationFor(final String query) {
+        final CachedResponse<V> cached = responseCache.get(query);
+        if (cached == null) {
+            final QueryComputation<V> inFlight = inFlightComputations.get(query);
+            if (inFlight != null) {
+                log.debug("Query {} joins computation in flight", query);
+                return inFlight;
+            }
+
+            final long circuitGeneration = circuitBreaker.tryAcquirePermission();
+            if (circuitGeneration == CircuitBreaker.NOT_PERMITTED) {
+                log.debug("Query {} is completed with no value, circuit breaker is open", query);
+                metrics.recordShortCircuited();
+                return toComputation(query, CompletableFuture.completedFuture(null));
+            }
+
+            final QueryComputation<V> computation = submit(query, circuitGeneration);
+            if (computation == null) {
+                metrics.recordAdmissionRejected();
+                throw new AdmissionRejectedException(admissionLimit.getLimit());
+            }
+
+            return computation;
+        }
+
+        if (responseCache.needsRefresh(cached) && !inFlightComputations.containsKey(query)) {
+            // nobody awaits refresh, it only updates the cache once completed, skipped if not admitted
+            log.debug("Query {} is served from cache and refreshed in background", query);
+            final long circuitGeneration = circuitBreaker.tryAcquirePermission();
+            if (circuitGeneration != CircuitBreaker.NOT_PERMITTED) {
+                submit(query, circuitGeneration);
+            }
+        } else {
+            log.debug("Query {} is served from cache", query);
+        }
+
+        return toComputation(query, CompletableFuture.completedFuture(cached.getValue()));
+    }
+
+    /**
+     * Submits computation permitted by circuit breaker, permission is given back unless it's submitted.
+     *
+     * @return newly submitted computation or the one submitted concurrently, null if not admitted
+     */
+    private QueryComputation<V> submit(final String query, final long circuitGeneration) {
+        if (!admissionLimit.tryAcquire()) {
+            log.debug("Query {} is not admitted, {} queries in flight already", query, admissionLimit.getInFlight());
+            circuitBreaker.releasePermission(circuitGeneration);
+            return null;
+        }
+
+        final QueryComputation<V> computation = toComputation(query, new CompletableFuture<>());
+        final QueryComputation<V> concurrentlySubmitted = inFlightComputations.putIfAbsent(query, computation);
+        if (concurrentlySubmitted != null) {
+            admissionLimit.release();
+            circuitBreaker.releasePermission(circuitGeneration);
+            log.debug("Query {} joins computation in flight", query);
+            return concurrentlySubmitted;
+        }
+
+        computation.markAdmitted(circuitGeneration);
+
+        // completes in any case: with value, with no value on timeout or exceptionally
+        computation.getResponseCalculation()
+                .whenComplete((value, throwable) -> {
+                    metrics.recordComputation(value != null, System.nanoTime() - computation.getDeadlineNanos() >= 0);
+                    // cache first, so parallel requests find it either in cache or in flight,
+                    // rejected one is not cached, as backend never told there is no value
+                    if (!(throwable instanceof AdmissionRejectedException)) {
+                        responseCache.put(query, value);
+                    }
+                    inFlightComputations.remove(query, computation);
+                    admissionLimit.release(System.nanoTime() - computation.getCreatedAtNanos());
+                });
 
-        // group by batches asynchronously and release this thread
-        Lists.partition(computations, batchCapacity)
-                .forEach(
-                        nextChunk ->
-                                CompletableFuture
-                                        .supplyAsync(() -> batchBufferingService.prepareBatch(nextChunk))
-                                        .thenAcceptAsync(batchProcessor::process)
-                );
+        try {
+            batchingService.submit(computation);
+        } catch (AdmissionRejectedException e) {
+            // batching has no room, so computation completes with no value instead of blocking the caller
+            log.debug("Query {} is not batched: {}", query, e.getMessage());
+            metrics.recordAdmissionRejected();
+            computation.getResponseCalculation().completeExceptionally(e);
+        }
 
-        return computations;
+        return computation;
     }
 
     /**
-     * Convert incoming queries into computations providing asynchronous access to future results.
+     * Convert incoming query into computation providing asynchronous access to future result.
      */
-    private List<QueryComputation<V>> toComputations(final Set<String> queries) {
-        return queries.stream()
-                .map(
-                        query -> new QueryComputation<>(
-                                query,
-                                new CompletableFuture<V>(),
-                                queryComputationTimeoutInSeconds
-                        )
-                )
-                .collect(Collectors.toList());
+    private QueryComputation<V> toComputation(final String query, final CompletableFuture<V> responseCalculation) {
+        return new QueryComputation<>(
+                query,
+                responseCalculation,
+                queryComputationTimeoutInSeconds
+        );
     }
 }
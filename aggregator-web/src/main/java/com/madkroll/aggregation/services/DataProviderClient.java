@@ -1,53 +1,150 @@
 package com.madkroll.aggregation.services;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.AllArgsConstructor;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.MediaType;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.util.retry.Retry;
 
 import java.time.Duration;
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Log4j2
 @AllArgsConstructor
 public class DataProviderClient<V> {
 
+    // spread of retry backoff, so retries of concurrent batches do not hit recovering backend at once
+    private static final double RETRY_JITTER = 0.5;
+
     private final int backendTimeoutInSeconds;
     private final int maxRetries;
+
+    // backoff of the first retry, doubled by every next one
+    private final Duration retryBackoff;
+
     private final WebClient webClient;
     private final ObjectMapper objectMapper;
 
+    // decodes value of every entry into the type of this data provider
+    private final ValueDecoder<V> valueDecoder;
+
+    // sends slow call again once its latency is in the tail of the latest ones
+    private final HedgingPolicy hedgingPolicy;
+
+    // accounts outcome of every backend call
+    private final CircuitBreaker circuitBreaker;
+
+    private final ProviderMetrics metrics;
+
     /**
      * Retrieves over HTTP data from corresponding data provider.
-     * Uses non-blocking API.
+     * Uses non-blocking API and emits every entry as soon as it's parsed, before the whole body arrives.
+     * <p>
+     * Call not responding by hedging delay is sent again, entries are taken from whichever responds first
+     * and the other one is cancelled. Call failed while the other one is still running does not win.
+     * Failed requests are retried with exponential backoff and jitter, unless response is malformed.
+     * Once backend timeout passed, stream just completes, so entries parsed so far are still delivered.
+     * Outcome of every call is accounted by circuit breaker under the generation queries are admitted under.
      * */
-    public Mono<Map<String, V>> retrieveByHttp(final Collection<String> queries) {
+    public Flux<Map.Entry<String, V>> streamByHttp(final Collection<String> queries, final long circuitGeneration) {
         final String joinedQueries = String.join(",", queries);
         log.debug("HTTP: requesting queries:{}", joinedQueries);
 
-        return webClient
-                .get()
-                .uri("?q=" + joinedQueries)
-                .accept(MediaType.APPLICATION_JSON)
-                .retrieve()
-                .bodyToMono(String.class)
-                .retryWhen(Retry.max(maxRetries))
-                .map(this::parseMap)
-                .timeout(Duration.ofSeconds(backendTimeoutInSeconds));
+        return Flux
+                .defer(() -> hedged(joinedQueries, circuitGeneration))
+                .retryWhen(
+                        Retry.backoff(maxRetries, retryBackoff)
+                                .jitter(RETRY_JITTER)
+                                .filter(throwable -> !(throwable instanceof MalformedResponseException))
+                                .doBeforeRetry(retry -> metrics.recordBackendRetry())
+                )
+                .take(Duration.ofSeconds(backendTimeoutInSeconds));
+    }
+
+    private Flux<Map.Entry<String, V>> hedged(final String joinedQueries, final long circuitGeneration) {
+        final long hedgingDelayNanos = hedgingPolicy.delayNanos();
+        if (hedgingDelayNanos < 0) {
+            return call(joinedQueries, circuitGeneration);
+        }
+
+        // calls sent and neither failed nor cancelled yet
+        final AtomicInteger runningCalls = new AtomicInteger(1);
+        return Flux.first(
+                racing(call(joinedQueries, circuitGeneration), runningCalls),
+                Mono.delay(Duration.ofNanos(hedgingDelayNanos))
+                        .doOnNext(hedging -> {
+                            log.debug("HTTP: hedging queries:{}", joinedQueries);
+                            metrics.recordBackendHedge();
+                            runningCalls.incrementAndGet();
+                        })
+                        .thenMany(racing(call(joinedQueries, circuitGeneration), runningCalls))
+        );
+    }
+
+    /**
+     * Failed call gives way to the other one still running, so only a call emitting entries wins the race.
+     * Once the other one is cancelled by the winner or failed as well, the error is propagated.
+     */
+    private Flux<Map.Entry<String, V>> racing(
+            final Flux<Map.Entry<String, V>> call,
+            final AtomicInteger runningCalls
+    ) {
+        return call
+                .doOnCancel(runningCalls::decrementAndGet)
+                .onErrorResume(throwable -> runningCalls.decrementAndGet() > 0 ? Flux.never() : Flux.error(throwable));
+    }
+
+    private Flux<Map.Entry<String, V>> call(final String joinedQueries, final long circuitGeneration) {
+        return Flux
+                // parser holds state of single response, so every call starts with a new one
+                .defer(() -> {
+                    final ProviderMetrics.BackendCall backendCall = metrics.startBackendCall();
+                    return parse(
+                            webClient
+                                    .get()
+                                    .uri("?q=" + joinedQueries)
+                                    .accept(MediaType.APPLICATION_JSON)
+                                    .retrieve()
+                                    .bodyToFlux(DataBuffer.class)
+                    )
+                            .doOnComplete(() -> stop(backendCall, BackendOutcome.SUCCESS, circuitGeneration))
+                            .doOnError(throwable -> stop(backendCall, BackendOutcome.of(throwable), circuitGeneration))
+                            // backend timeout passed, hedge responded first, or retries exhausted right after the error
+                            .doOnCancel(() -> stop(backendCall, BackendOutcome.CANCELLED, circuitGeneration));
+                });
     }
 
-    private Map<String, V> parseMap(final String content) {
-        try {
-            return objectMapper.readValue(content, new TypeReference<>() {
-            });
-        } catch (JsonProcessingException e) {
-            throw new IllegalStateException("Unable to parse response. Response is malformed.", e);
+    private void stop(
+            final ProviderMetrics.BackendCall backendCall,
+            final BackendOutcome outcome,
+            final long circuitGeneration
+    ) {
+        final long elapsedNanos = backendCall.stop(outcome);
+        if (elapsedNanos < 0) {
+            return;
+        }
+
+        circuitBreaker.recordCall(outcome, elapsedNanos, circuitGeneration);
+        if (outcome == BackendOutcome.SUCCESS) {
+            hedgingPolicy.recordLatency(elapsedNanos);
         }
     }
+
+    private Flux<Map.Entry<String, V>> parse(final Flux<DataBuffer> body) {
+        final JsonEntryParser<V> parser = new JsonEntryParser<>(objectMapper.getFactory(), valueDecoder);
+        return body
+                // released as soon as copied, so chunk failed to parse is not released once again on discard
+                .map(JsonEntryParser::toBytes)
+                .concatMapIterable(parser::feed)
+                .concatWith(Mono.fromRunnable(parser::endOfInput))
+                // chunks received, but not copied yet
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
 }
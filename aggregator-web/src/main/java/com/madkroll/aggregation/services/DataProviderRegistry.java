@@ -0,0 +1,33 @@
+package com.madkroll.aggregation.services;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Data providers aggregation fans out to, keyed by provider name in the order they are registered.
+ */
+public class DataProviderRegistry {
+
+    private final Map<String, DataProvider<?>> providers;
+
+    public DataProviderRegistry(final Map<String, ? extends DataProvider<?>> providers) {
+        this.providers = Collections.unmodifiableMap(new LinkedHashMap<>(providers));
+    }
+
+    public Map<String, DataProvider<?>> getProviders() {
+        return providers;
+    }
+
+    public Set<String> getProviderNames() {
+        return providers.keySet();
+    }
+
+    /**
+     * Releases resources of all data providers.
+     */
+    public void shutdown() {
+        providers.values().forEach(DataProvider::shutdown);
+    }
+}
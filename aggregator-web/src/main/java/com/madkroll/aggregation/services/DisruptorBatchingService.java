@@ -0,0 +1,114 @@
+package com.madkroll.aggregation.services;
+
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.EventTranslatorOneArg;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+@Log4j2
+public class DisruptorBatchingService<T> implements BatchingService<T> {
+
+    // complete batch once it is full
+    private final int batchCapacity;
+
+    // once batch is complete, handles it's further processing
+    private final Consumer<List<T>> batchConsumer;
+
+    private final Disruptor<Slot<T>> disruptor;
+
+    // preallocated slots, publishing item only sets reference inside next free slot
+    private final RingBuffer<Slot<T>> ringBuffer;
+
+    private final EventTranslatorOneArg<Slot<T>, T> slotWriter = (slot, sequence, item) -> slot.item = item;
+
+    public DisruptorBatchingService(
+            final int batchCapacity,
+            final int ringSize,
+            final Consumer<List<T>> batchConsumer
+    ) {
+        if (batchCapacity < 1) {
+            throw new IllegalArgumentException("Batch capacity must be positive: " + batchCapacity);
+        }
+
+        this.batchCapacity = batchCapacity;
+        this.batchConsumer = batchConsumer;
+        this.disruptor = new Disruptor<>(
+                Slot::new,
+                ringSize,
+                new DefaultThreadFactory("batching-disruptor", true),
+                ProducerType.MULTI,
+                new BlockingWaitStrategy()
+        );
+        this.disruptor.handleEventsWith(new BatchingEventHandler());
+        this.ringBuffer = disruptor.start();
+    }
+
+    /**
+     * Publishes item into the ring buffer.
+     * <p>
+     * Never blocks, so it's safe to submit from event loop: if ring buffer is full, item is rejected right away
+     * instead of waiting until batching handler frees a slot.
+     *
+     * @throws AdmissionRejectedException if ring buffer is full
+     */
+    @Override
+    public void submit(final T item) {
+        if (!ringBuffer.tryPublishEvent(slotWriter, item)) {
+            throw new AdmissionRejectedException("Batching ring buffer of " + ringBuffer.getBufferSize() + " slots is full");
+        }
+    }
+
+    /**
+     * Waits until all published items are handed over in batches and stops batching thread.
+     */
+    @Override
+    public void shutdown() {
+        disruptor.shutdown();
+    }
+
+    private void dispatch(final List<T> batch) {
+        log.debug("Batch is flushed with {} of {} items", batch.size(), batchCapacity);
+        try {
+            batchConsumer.accept(batch);
+        } catch (Exception e) {
+            log.error("Unable to hand over flushed batch", e);
+        }
+    }
+
+    /**
+     * Drains ring buffer into batches on single thread.
+     * <p>
+     * Batch is flushed once it is full or once there is nothing else published yet (end of disruptor's batch).
+     * So under low load batch is handed over immediately without any linger,
+     * while under high load batches fill up from the backlog accumulated in the ring buffer.
+     */
+    private final class BatchingEventHandler implements EventHandler<Slot<T>> {
+
+        private List<T> batch = new ArrayList<>(batchCapacity);
+
+        @Override
+        public void onEvent(final Slot<T> slot, final long sequence, final boolean endOfBatch) {
+            batch.add(slot.item);
+            // let item be collected once processed, ring buffer slot outlives it
+            slot.item = null;
+
+            if (batch.size() == batchCapacity || endOfBatch) {
+                dispatch(batch);
+                batch = new ArrayList<>(batchCapacity);
+            }
+        }
+    }
+
+    private static final class Slot<T> {
+
+        private T item;
+    }
+}
@@ -0,0 +1,124 @@
+package com.madkroll.aggregation.services;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Decides when backend call still not responding is hedged by the same call sent again.
+ * <p>
+ * Hedging delay is the given percentile of the latest successful call latencies, so only the slowest calls are
+ * hedged and backend load grows by at most the share of calls above that percentile.
+ * Calls are not hedged until enough latencies are observed.
+ * <p>
+ * Successful call only writes its latency into the ring, the percentile is recomputed once per the given number
+ * of latencies recorded, so the delay lags behind the window by at most that many calls.
+ */
+public class HedgingPolicy {
+
+    private final boolean enabled;
+
+    private final double percentile;
+
+    private final int minSamples;
+
+    private final long minDelayNanos;
+
+    private final int recomputeEvery;
+
+    // latest latencies in nanos, written without locking, slot of the next one is recorded latencies modulo length
+    private final AtomicLongArray latencies;
+    private final AtomicLong recordedLatencies = new AtomicLong();
+
+    // set while delay is recomputed, latencies recorded meanwhile don't recompute it again
+    private final AtomicBoolean recomputing = new AtomicBoolean();
+
+    // recomputed once per recomputeEvery latencies recorded, negative while not enough latencies observed
+    private volatile long delayNanos = -1;
+
+    private HedgingPolicy(
+            final boolean enabled,
+            final double percentile,
+            final int windowSize,
+            final int minSamples,
+            final int recomputeEvery,
+            final long minDelayInMillis
+    ) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new IllegalArgumentException("Hedging percentile must be between 0 and 1: " + percentile);
+        }
+
+        if (minSamples < 1 || minSamples > windowSize) {
+            throw new IllegalArgumentException("Hedging min samples must be between 1 and window size: " + minSamples);
+        }
+
+        if (recomputeEvery < 1) {
+            throw new IllegalArgumentException("Hedging delay must be recomputed at least every sample: " + recomputeEvery);
+        }
+
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.minSamples = minSamples;
+        this.recomputeEvery = recomputeEvery;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayInMillis);
+        this.latencies = new AtomicLongArray(windowSize);
+    }
+
+    public static HedgingPolicy disabled() {
+        return new HedgingPolicy(false, 0.5, 1, 1, 1, 0);
+    }
+
+    public static HedgingPolicy of(
+            final double percentile,
+            final int windowSize,
+            final int minSamples,
+            final int recomputeEvery,
+            final long minDelayInMillis
+    ) {
+        return new HedgingPolicy(true, percentile, windowSize, minSamples, recomputeEvery, minDelayInMillis);
+    }
+
+    /**
+     * @return delay since call started till it's hedged, negative if call is not hedged
+     */
+    public long delayNanos() {
+        return delayNanos;
+    }
+
+    /**
+     * Accounts latency of successful backend call, recomputing delay only once enough latencies recorded since
+     * the last time and only if nobody else is recomputing it right now.
+     */
+    public void recordLatency(final long latencyNanos) {
+        if (!enabled) {
+            return;
+        }
+
+        final long recorded = recordedLatencies.incrementAndGet();
+        latencies.set((int) ((recorded - 1) % latencies.length()), latencyNanos);
+        if (recorded < minSamples || (recorded != minSamples && recorded % recomputeEvery != 0)) {
+            return;
+        }
+
+        if (recomputing.compareAndSet(false, true)) {
+            try {
+                recomputeDelay((int) Math.min(recorded, latencies.length()));
+            } finally {
+                recomputing.set(false);
+            }
+        }
+    }
+
+    private void recomputeDelay(final int samples) {
+        // slots may be overwritten while copied, the percentile is approximate anyway
+        final long[] sorted = new long[samples];
+        for (int i = 0; i < samples; i++) {
+            sorted[i] = latencies.get(i);
+        }
+        Arrays.sort(sorted);
+        final int index = (int) Math.ceil(percentile * samples) - 1;
+        delayNanos = Math.max(minDelayNanos, sorted[Math.max(0, index)]);
+    }
+}
@@ -0,0 +1,165 @@
+package com.madkroll.aggregation.services;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.core.io.JsonEOFException;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses JSON object incrementally, chunk by chunk, as it arrives from the network.
+ * Every top-level entry is returned as soon as its value is complete, so there is no need to await the whole body.
+ * <p>
+ * Holds parsing state of single response, so it's neither reusable nor thread-safe.
+ */
+public class JsonEntryParser<V> {
+
+    // decodes value of every entry, once it's complete
+    private final ValueDecoder<V> valueDecoder;
+
+    // non-blocking parser, returns NOT_AVAILABLE instead of blocking once fed input is exhausted
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+
+    private boolean objectStarted;
+    private boolean objectEnded;
+
+    // entry being parsed, tokens of array or object value are buffered until the value is complete
+    private String key;
+    private boolean valueExpected;
+    private TokenBuffer structuredValue;
+    private int valueDepth;
+    // elements of array value or entries of object value buffered so far
+    private int valueElements;
+
+    public JsonEntryParser(final JsonFactory jsonFactory, final ValueDecoder<V> valueDecoder) {
+        this.valueDecoder = valueDecoder;
+        try {
+            this.parser = jsonFactory.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to create non-blocking JSON parser", e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    /**
+     * Copies readable bytes of chunk and releases it.
+     * Jackson non-blocking parser accepts byte arrays only, so every chunk is copied, but never the whole body.
+     */
+    public static byte[] toBytes(final DataBuffer chunk) {
+        final byte[] bytes = new byte[chunk.readableByteCount()];
+        try {
+            chunk.read(bytes);
+        } finally {
+            DataBufferUtils.release(chunk);
+        }
+        return bytes;
+    }
+
+    /**
+     * Feeds next chunk of the body and returns entries completed by it.
+     */
+    public List<Map.Entry<String, V>> feed(final byte[] bytes) {
+        try {
+            feeder.feedInput(bytes, 0, bytes.length);
+            return parseAvailable();
+        } catch (IOException e) {
+            throw malformed(e);
+        }
+    }
+
+    /**
+     * Signals that the body is over. Fails if JSON object is not complete.
+     */
+    public void endOfInput() {
+        feeder.endOfInput();
+        try {
+            parseAvailable();
+            if (!objectEnded) {
+                throw new JsonEOFException(parser, null, "Response ended before JSON object was closed");
+            }
+        } catch (IOException e) {
+            throw malformed(e);
+        }
+    }
+
+    private List<Map.Entry<String, V>> parseAvailable() throws IOException {
+        final List<Map.Entry<String, V>> entries = new ArrayList<>();
+
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            if (objectEnded) {
+                throw new JsonParseException(parser, "Unexpected content after JSON object");
+            }
+
+            if (!objectStarted) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new JsonParseException(parser, "Expected JSON object, but got " + token);
+                }
+                objectStarted = true;
+                continue;
+            }
+
+            if (structuredValue != null) {
+                structuredValue.copyCurrentEvent(parser);
+                if (valueDepth == 1 && token != JsonToken.FIELD_NAME && !token.isStructEnd()) {
+                    valueElements++;
+                }
+                valueDepth += token.isStructStart() ? 1 : token.isStructEnd() ? -1 : 0;
+                if (valueDepth == 0) {
+                    entries.add(toEntry(decodeBuffered(structuredValue, valueElements)));
+                    structuredValue = null;
+                }
+                continue;
+            }
+
+            if (valueExpected) {
+                valueExpected = false;
+                if (token.isStructStart()) {
+                    structuredValue = new TokenBuffer(parser);
+                    structuredValue.copyCurrentEvent(parser);
+                    valueDepth = 1;
+                    valueElements = 0;
+                } else {
+                    // scalar token is always complete, so it's decoded right from the parser
+                    entries.add(toEntry(valueDecoder.decode(parser)));
+                }
+                continue;
+            }
+
+            if (token == JsonToken.END_OBJECT) {
+                objectEnded = true;
+            } else {
+                key = parser.getCurrentName();
+                valueExpected = true;
+            }
+        }
+
+        return entries;
+    }
+
+    private V decodeBuffered(final TokenBuffer value, final int elements) throws IOException {
+        try (JsonParser valueParser = value.asParser()) {
+            valueParser.nextToken();
+            return valueDecoder.decode(valueParser, elements);
+        }
+    }
+
+    private Map.Entry<String, V> toEntry(final V value) {
+        return new AbstractMap.SimpleImmutableEntry<>(key, value);
+    }
+
+    private MalformedResponseException malformed(final IOException cause) {
+        return new MalformedResponseException(cause);
+    }
+}
@@ -0,0 +1,11 @@
+package com.madkroll.aggregation.services;
+
+/**
+ * Thrown once backend response is not a valid JSON object of entries, such response is never retried.
+ */
+public class MalformedResponseException extends RuntimeException {
+
+    public MalformedResponseException(final Throwable cause) {
+        super("Unable to parse response. Response is malformed.", cause);
+    }
+}
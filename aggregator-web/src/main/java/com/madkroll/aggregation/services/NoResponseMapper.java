@@ -1,10 +1,10 @@
 package com.madkroll.aggregation.services;
 
+import com.google.common.collect.Maps;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
 
 @Service
@@ -18,7 +18,7 @@ public class NoResponseMapper {
             return Map.of();
         }
 
-        final Map<String, V> result = new HashMap<>();
+        final Map<String, V> result = Maps.newHashMapWithExpectedSize(keys.size());
         keys.forEach(key -> result.put(key, null));
         return result;
     }
@@ -0,0 +1,184 @@
+package com.madkroll.aggregation.services;
+
+import io.micrometer.core.instrument.*;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Meters of single data provider, all tagged with provider name.
+ * <p>
+ * Meters are registered once, so recording on the hot path is a lock-free update without lookups.
+ */
+public class ProviderMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    private final Tags tags;
+
+    private final DistributionSummary batchSize;
+    private final DistributionSummary batchFillRatio;
+    private final Counter batchesSealedFull;
+    private final Counter batchesSealedByTimer;
+    private final Map<BackendOutcome, Timer> backendLatency = new EnumMap<>(BackendOutcome.class);
+    private final Counter backendRetries;
+    private final Counter backendHedges;
+    private final Counter backendParseFailures;
+    private final Counter computationsWithValue;
+    private final Counter computationsWithNoValue;
+    private final Counter computationsTimedOut;
+    private final Counter admissionRejected;
+    private final Counter shortCircuited;
+
+    public ProviderMetrics(final MeterRegistry meterRegistry, final String providerName) {
+        this.meterRegistry = meterRegistry;
+        this.tags = Tags.of("provider", providerName);
+
+        this.batchSize = DistributionSummary.builder("aggregation.batch.size")
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.batchFillRatio = DistributionSummary.builder("aggregation.batch.fill.ratio")
+                .tags(tags)
+                .register(meterRegistry);
+        this.batchesSealedFull = sealed("full");
+        this.batchesSealedByTimer = sealed("timer");
+        for (BackendOutcome outcome : BackendOutcome.values()) {
+            backendLatency.put(outcome, backendLatency(outcome));
+        }
+        this.backendRetries = meterRegistry.counter("aggregation.backend.retries", tags);
+        this.backendHedges = meterRegistry.counter("aggregation.backend.hedges", tags);
+        this.backendParseFailures = meterRegistry.counter("aggregation.backend.parse.failures", tags);
+        this.computationsWithValue = computations("value");
+        this.computationsWithNoValue = computations("no-value");
+        this.computationsTimedOut = computations("timeout");
+        this.admissionRejected = meterRegistry.counter("aggregation.admission.rejected", tags);
+        this.shortCircuited = meterRegistry.counter("aggregation.circuit.short.circuited", tags);
+    }
+
+    /**
+     * Records nothing, meant for tests and benchmarks.
+     */
+    public static ProviderMetrics disabled() {
+        return new ProviderMetrics(new CompositeMeterRegistry(), "none");
+    }
+
+    public void recordBatch(final int size) {
+        batchSize.record(size);
+    }
+
+    /**
+     * Accounts batch sealed by batching which sizes batches itself.
+     * Fill ratio is taken to the capacity this very batch is sealed with, which adaptive sizing adjusts per batch,
+     * so ratio never exceeds 1 and it's 1 only if batch is sealed full, lower ones are sealed by timer.
+     *
+     * @param size     items in sealed batch
+     * @param capacity capacity the batch is sealed with, not the configured one
+     */
+    public void recordBatchSealed(final int size, final int capacity) {
+        batchFillRatio.record((double) size / capacity);
+        (size >= capacity ? batchesSealedFull : batchesSealedByTimer).increment();
+    }
+
+    public BackendCall startBackendCall() {
+        return new BackendCall(Timer.start(meterRegistry));
+    }
+
+    public void recordBackendRetry() {
+        backendRetries.increment();
+    }
+
+    public void recordBackendHedge() {
+        backendHedges.increment();
+    }
+
+    /**
+     * Accounts completed computation, timed out one is completed with no value once its deadline passed.
+     */
+    public void recordComputation(final boolean hasValue, final boolean timedOut) {
+        if (hasValue) {
+            computationsWithValue.increment();
+        } else if (timedOut) {
+            computationsTimedOut.increment();
+        } else {
+            computationsWithNoValue.increment();
+        }
+    }
+
+    public void gaugeInFlightComputations(final Map<String, ?> inFlightComputations) {
+        Gauge.builder("aggregation.computations.in.flight", inFlightComputations, Map::size)
+                .tags(tags)
+                .register(meterRegistry);
+    }
+
+    public void recordAdmissionRejected() {
+        admissionRejected.increment();
+    }
+
+    public void gaugeAdmissionLimit(final AdmissionLimit admissionLimit) {
+        Gauge.builder("aggregation.admission.limit", admissionLimit, AdmissionLimit::getLimit)
+                .tags(tags)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Accounts query completed with no value right away, since circuit breaker is open.
+     */
+    public void recordShortCircuited() {
+        shortCircuited.increment();
+    }
+
+    /**
+     * Gauges state of circuit breaker: 0 - closed, 1 - open, 2 - half-open.
+     */
+    public void gaugeCircuitState(final CircuitBreaker circuitBreaker) {
+        Gauge.builder("aggregation.circuit.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+                .tags(tags)
+                .register(meterRegistry);
+    }
+
+    private Timer backendLatency(final BackendOutcome outcome) {
+        return Timer.builder("aggregation.backend.latency")
+                .tags(tags.and("outcome", outcome.name().toLowerCase()))
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private Counter sealed(final String cause) {
+        return meterRegistry.counter("aggregation.batch.sealed", tags.and("cause", cause));
+    }
+
+    private Counter computations(final String outcome) {
+        return meterRegistry.counter("aggregation.computations", tags.and("outcome", outcome));
+    }
+
+    /**
+     * Single backend call being timed, only its first outcome is recorded.
+     */
+    public final class BackendCall {
+
+        private final Timer.Sample sample;
+
+        private final AtomicBoolean stopped = new AtomicBoolean();
+
+        private BackendCall(final Timer.Sample sample) {
+            this.sample = sample;
+        }
+
+        /**
+         * @return time since call started in nanos, or -1 if its outcome is already recorded
+         */
+        public long stop(final BackendOutcome outcome) {
+            if (!stopped.compareAndSet(false, true)) {
+                return -1;
+            }
+
+            if (outcome == BackendOutcome.MALFORMED) {
+                backendParseFailures.increment();
+            }
+            return sample.stop(backendLatency.get(outcome));
+        }
+    }
+}
@@ -12,16 +12,72 @@ public class QueryComputation<V> {
     private final CompletableFuture<V> responseCalculation;
     private final CompletableFuture<V> responseHandling;
 
+    private final long createdAtNanos;
+
+    // System.nanoTime() by which computation is completed anyway, with no value if not computed yet
+    private final long deadlineNanos;
+
+    // System.nanoTime() of every pipeline stage reached, zero if not reached (yet),
+    // written before computation is completed, so visible to whoever awaits its completion
+    private long dispatchedAtNanos;
+    private long requestedAtNanos;
+    private long respondedAtNanos;
+    private long completedAtNanos;
+
+    // circuit breaker generation computation is submitted under, written before it's submitted
+    private long circuitGeneration;
+
     public QueryComputation(
             final String query,
             final CompletableFuture<V> responseCalculation,
             final int timeoutInSeconds
     ) {
         this.query = query;
+        this.createdAtNanos = System.nanoTime();
+        this.deadlineNanos = createdAtNanos + TimeUnit.SECONDS.toNanos(timeoutInSeconds);
         this.responseCalculation = responseCalculation;
+        // served from cache, never dispatched
+        if (responseCalculation.isDone()) {
+            this.completedAtNanos = createdAtNanos;
+        }
         this.responseHandling =
                 responseCalculation
                         .completeOnTimeout(null, timeoutInSeconds, TimeUnit.SECONDS)
                         .exceptionally(throwable -> null);
     }
+
+    /**
+     * Computation is admitted by circuit breaker and about to be submitted.
+     */
+    void markAdmitted(final long circuitGeneration) {
+        this.circuitGeneration = circuitGeneration;
+    }
+
+    /**
+     * Batch is sealed and handed over for processing.
+     */
+    void markDispatched(final long nanos) {
+        dispatchedAtNanos = nanos;
+    }
+
+    /**
+     * Batch left preparation queue and is sent to backend.
+     */
+    void markRequested(final long nanos) {
+        requestedAtNanos = nanos;
+    }
+
+    /**
+     * Value is received from backend or response is over with no value.
+     */
+    void markResponded(final long nanos) {
+        respondedAtNanos = nanos;
+    }
+
+    /**
+     * Value is handed over to response fan-out and computation is about to be completed.
+     */
+    void markCompleted(final long nanos) {
+        completedAtNanos = nanos;
+    }
 }
@@ -0,0 +1,96 @@
+package com.madkroll.aggregation.services;
+
+import lombok.extern.log4j.Log4j2;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.UnicastProcessor;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+
+@Log4j2
+public class ReactorBatchingService<T> implements BatchingService<T> {
+
+    // batches processed concurrently, emitted batches beyond it wait for one of them to complete
+    private static final int MAX_BATCHES_IN_FLIGHT = 256;
+
+    private final int batchCapacity;
+
+    private final long batchTimeoutInMillis;
+
+    private final Function<List<T>, Publisher<?>> batchProcessing;
+
+    // serialized sink shared by all submitting threads, replaced once batching is resubscribed
+    private volatile FluxSink<T> sink;
+
+    private volatile boolean shutdown;
+
+    public ReactorBatchingService(
+            final int batchCapacity,
+            final long batchTimeoutInMillis,
+            final Function<List<T>, Publisher<?>> batchProcessing
+    ) {
+        if (batchCapacity < 1) {
+            throw new IllegalArgumentException("Batch capacity must be positive: " + batchCapacity);
+        }
+
+        this.batchCapacity = batchCapacity;
+        this.batchTimeoutInMillis = batchTimeoutInMillis;
+        this.batchProcessing = batchProcessing;
+        subscribe();
+    }
+
+    /**
+     * Emits item into the shared sink. Batch is emitted once it's full or once batch timeout passed
+     * since its first item, whichever comes first. Never blocks, emitted batch may be processed on the calling thread.
+     *
+     * @param item item to be processed as part of the next batch
+     */
+    @Override
+    public void submit(final T item) {
+        sink.next(item);
+    }
+
+    /**
+     * Completes the sink, items already submitted are still emitted.
+     */
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        sink.complete();
+    }
+
+    /**
+     * Subscribes to batches of a new sink. Emitted batches are buffered till processing requests them,
+     * so batch timeout never fires without demand. Batching failed anyway is subscribed again,
+     * items submitted into the failed sink are given up and time out.
+     */
+    private void subscribe() {
+        final UnicastProcessor<T> processor = UnicastProcessor.create();
+        final FluxSink<T> nextSink = processor.sink();
+        processor
+                .bufferTimeout(batchCapacity, Duration.ofMillis(batchTimeoutInMillis))
+                .onBackpressureBuffer()
+                .doOnNext(batch -> log.debug("Batch is emitted with {} of {} items", batch.size(), batchCapacity))
+                // batches are processed concurrently, completion happens on the thread delivering the response
+                .flatMap(
+                        batch -> Flux.defer(() -> batchProcessing.apply(batch))
+                                .onErrorResume(throwable -> {
+                                    log.error("Unable to process emitted batch", throwable);
+                                    return Flux.empty();
+                                }),
+                        MAX_BATCHES_IN_FLIGHT
+                )
+                .subscribe(null, this::resubscribe);
+        sink = nextSink;
+    }
+
+    private void resubscribe(final Throwable throwable) {
+        log.error("Batching failed, subscribing again", throwable);
+        if (!shutdown) {
+            subscribe();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.madkroll.aggregation.services;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Latency breakdown of single aggregation request, from controller entry till response is merged.
+ * <p>
+ * Spans are recorded in order they are reached and written as single log line once request is over,
+ * so sampled requests can be analyzed without any tracing backend.
+ * Trace which is not sampled records nothing.
+ */
+@Log4j2(topic = "aggregation.trace")
+public class RequestTrace {
+
+    private static final RequestTrace NONE = new RequestTrace(null, 0);
+
+    @Getter
+    private final String traceId;
+
+    // System.nanoTime() of controller entry
+    @Getter
+    private final long startedAtNanos;
+
+    // duration in nanos per span name, recorded by whichever thread reached the stage
+    private final Map<String, Long> spans = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    public RequestTrace(final String traceId, final long startedAtNanos) {
+        this.traceId = traceId;
+        this.startedAtNanos = startedAtNanos;
+    }
+
+    public static RequestTrace none() {
+        return NONE;
+    }
+
+    public boolean isSampled() {
+        return traceId != null;
+    }
+
+    public void record(final String span, final long fromNanos, final long toNanos) {
+        if (isSampled()) {
+            spans.put(span, toNanos - fromNanos);
+        }
+    }
+
+    /**
+     * Records breakdown of the slowest computation of data provider, it's the one response was awaiting for:
+     * <ul>
+     *     <li>linger - waiting in buffered slot till batch is sealed</li>
+     *     <li>queue - waiting for batch preparation thread</li>
+     *     <li>backend - HTTP call including retries</li>
+     *     <li>fan-out - waiting for response fan-out thread</li>
+     * </ul>
+     * Computation served from cache is recorded as cached, the one not completed yet as timeout.
+     */
+    public void recordComputations(final String provider, final List<? extends QueryComputation<?>> computations) {
+        if (!isSampled() || computations.isEmpty()) {
+            return;
+        }
+
+        final long now = System.nanoTime();
+        QueryComputation<?> slowest = computations.get(0);
+        for (QueryComputation<?> computation : computations) {
+            if (completedAt(computation, now) - computation.getCreatedAtNanos()
+                    > completedAt(slowest, now) - slowest.getCreatedAtNanos()) {
+                slowest = computation;
+            }
+        }
+
+        if (slowest.getDispatchedAtNanos() == 0 && slowest.getCompletedAtNanos() != 0) {
+            record(provider + ".cached", slowest.getCreatedAtNanos(), slowest.getCompletedAtNanos());
+            return;
+        }
+
+        final long[] stages = {
+                slowest.getCreatedAtNanos(),
+                slowest.getDispatchedAtNanos(),
+                slowest.getRequestedAtNanos(),
+                slowest.getRespondedAtNanos(),
+                slowest.getCompletedAtNanos()
+        };
+        final String[] names = {"linger", "queue", "backend", "fan-out"};
+
+        int stage = 0;
+        while (stage < names.length && stages[stage + 1] != 0) {
+            record(provider + "." + names[stage], stages[stage], stages[stage + 1]);
+            stage++;
+        }
+
+        if (stage < names.length) {
+            record(provider + ".timeout", stages[stage], now);
+        }
+    }
+
+    /**
+     * Writes all recorded spans, total is time since controller entry.
+     */
+    public void finish() {
+        if (!isSampled()) {
+            return;
+        }
+
+        final long totalNanos = System.nanoTime() - startedAtNanos;
+        log.info("trace={} total={}ms {}", traceId, toMillis(totalNanos), formatSpans());
+    }
+
+    public Map<String, Long> getSpans() {
+        synchronized (spans) {
+            return Map.copyOf(spans);
+        }
+    }
+
+    private String formatSpans() {
+        synchronized (spans) {
+            return spans.entrySet()
+                    .stream()
+                    .map(span -> span.getKey() + "=" + toMillis(span.getValue()) + "ms")
+                    .collect(Collectors.joining(" "));
+        }
+    }
+
+    private static long completedAt(final QueryComputation<?> computation, final long now) {
+        return computation.getCompletedAtNanos() == 0 ? now : computation.getCompletedAtNanos();
+    }
+
+    private static String toMillis(final long nanos) {
+        return String.format("%.3f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
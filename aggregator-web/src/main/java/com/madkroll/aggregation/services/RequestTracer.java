@@ -0,0 +1,34 @@
+package com.madkroll.aggregation.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Starts trace of every request entering controller, sampling only given share of them.
+ */
+@Component
+public class RequestTracer {
+
+    // share of requests traced, from 0 (none) to 1 (all)
+    private final double sampleRate;
+
+    public RequestTracer(@Value("${tracing.sample-rate}") final double sampleRate) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("Sample rate must be between 0 and 1: " + sampleRate);
+        }
+
+        this.sampleRate = sampleRate;
+    }
+
+    public RequestTrace start() {
+        final long startedAtNanos = System.nanoTime();
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (sampleRate == 0 || random.nextDouble() >= sampleRate) {
+            return RequestTrace.none();
+        }
+
+        return new RequestTrace(Long.toHexString(random.nextLong()), startedAtNanos);
+    }
+}
@@ -0,0 +1,131 @@
+package com.madkroll.aggregation.services;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+@Log4j2
+public class ResponseCache<V> {
+
+    // bounded map evicting entries on its own, entries are never removed only because of size here
+    private final ConcurrentMap<String, CachedResponse<V>> entries;
+
+    // how long value received from provider stays fresh
+    private final long ttlInNanos;
+
+    // how long value stays served after it became stale, while it's being refreshed, zero disables
+    private final long staleWhileRevalidateInNanos;
+
+    // how long missing value (no value from provider or timeout) stays fresh, zero disables negative caching
+    private final long negativeTtlInNanos;
+
+    // how long before becoming stale hot value is refreshed, zero disables
+    private final long refreshAheadInNanos;
+
+    // reads of the same value making it hot
+    private final int refreshAheadMinHits;
+
+    public ResponseCache(
+            final ConcurrentMap<String, CachedResponse<V>> entries,
+            final Duration ttl,
+            final Duration staleWhileRevalidate,
+            final Duration negativeTtl,
+            final Duration refreshAhead,
+            final int refreshAheadMinHits
+    ) {
+        this.entries = entries;
+        this.ttlInNanos = ttl.toNanos();
+        this.staleWhileRevalidateInNanos = staleWhileRevalidate.toNanos();
+        this.negativeTtlInNanos = negativeTtl.toNanos();
+        this.refreshAheadInNanos = Math.min(refreshAhead.toNanos(), ttlInNanos);
+        this.refreshAheadMinHits = refreshAheadMinHits;
+    }
+
+    /**
+     * Cache storing nothing.
+     */
+    public static <V> ResponseCache<V> disabled() {
+        return new ResponseCache<>(new ConcurrentHashMap<>(), Duration.ZERO, Duration.ZERO, Duration.ZERO, Duration.ZERO, 0);
+    }
+
+    /**
+     * Returns cached response if it can still be served (fresh or stale), otherwise null.
+     * Cached response itself may have null value, if negative caching is enabled.
+     */
+    public CachedResponse<V> get(final String query) {
+        final CachedResponse<V> cached = entries.get(query);
+        if (cached == null) {
+            return null;
+        }
+
+        if (cached.isExpired(System.nanoTime())) {
+            entries.remove(query, cached);
+            return null;
+        }
+
+        cached.getHits().incrementAndGet();
+        return cached;
+    }
+
+    /**
+     * Returns cached response if it can still be served, without counting it as a read and without expiring it.
+     */
+    public CachedResponse<V> peek(final String query) {
+        final CachedResponse<V> cached = entries.get(query);
+        return cached == null || cached.isExpired(System.nanoTime()) ? null : cached;
+    }
+
+    /**
+     * Tells if served response should be refreshed in background:
+     * once it's stale or once it's close to become stale and read often.
+     */
+    public boolean needsRefresh(final CachedResponse<V> cached) {
+        final long now = System.nanoTime();
+        return cached.isRefreshAheadDue(now)
+                && (cached.isStale(now) || cached.getHits().get() >= refreshAheadMinHits);
+    }
+
+    /**
+     * Caches value received for the query. Null value is cached only if negative caching is enabled.
+     * Null value never replaces value still being served, so failed refresh keeps stale value until it expires.
+     */
+    public void put(final String query, final V value) {
+        final long now = System.nanoTime();
+
+        if (value != null) {
+            if (ttlInNanos > 0) {
+                entries.put(query, newEntry(value, now));
+            }
+            return;
+        }
+
+        if (negativeTtlInNanos <= 0) {
+            return;
+        }
+
+        entries.compute(
+                query,
+                (key, existing) -> existing != null && existing.getValue() != null && !existing.isExpired(now)
+                        ? existing
+                        : newMissingEntry(now)
+        );
+    }
+
+    private CachedResponse<V> newEntry(final V value, final long now) {
+        final long staleAt = now + ttlInNanos;
+        return new CachedResponse<>(
+                value,
+                staleAt - refreshAheadInNanos,
+                staleAt,
+                staleAt + staleWhileRevalidateInNanos
+        );
+    }
+
+    private CachedResponse<V> newMissingEntry(final long now) {
+        // missing value is never served stale, provider is asked again once it expires
+        final long expiresAt = now + negativeTtlInNanos;
+        return new CachedResponse<>(null, expiresAt, expiresAt, expiresAt);
+    }
+}
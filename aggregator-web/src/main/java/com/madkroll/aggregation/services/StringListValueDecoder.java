@@ -0,0 +1,78 @@
+package com.madkroll.aggregation.services;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Decodes array of strings into compact immutable list of exact size.
+ * Elements are collected into array sized by the number of elements, so nothing grows on the way.
+ */
+public class StringListValueDecoder implements ValueDecoder<List<String>> {
+
+    /**
+     * Array streamed by the parser is buffered first, so its elements can be counted.
+     */
+    @Override
+    public List<String> decode(final JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            return decode(parser, 0);
+        }
+
+        final TokenBuffer buffered = new TokenBuffer(parser);
+        buffered.copyCurrentStructure(parser);
+
+        int elements = 0;
+        try (JsonParser counting = buffered.asParser()) {
+            counting.nextToken();
+            while (counting.nextToken() != JsonToken.END_ARRAY) {
+                counting.skipChildren();
+                elements++;
+            }
+        }
+
+        try (JsonParser decoding = buffered.asParser()) {
+            decoding.nextToken();
+            return decode(decoding, elements);
+        }
+    }
+
+    @Override
+    public List<String> decode(final JsonParser parser, final int elements) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "Expected array, but got " + parser.currentToken());
+        }
+
+        final String[] array = new String[elements];
+        for (int index = 0; index < elements; index++) {
+            array[index] = nextElement(parser);
+        }
+
+        if (parser.nextToken() != JsonToken.END_ARRAY) {
+            throw new JsonParseException(parser, "Expected end of array of " + elements + " elements");
+        }
+
+        // lists of up to two elements are stored without any backing array
+        return List.of(array);
+    }
+
+    /**
+     * @return next element of array
+     */
+    private String nextElement(final JsonParser parser) throws IOException {
+        final JsonToken token = parser.nextToken();
+        if (token != JsonToken.VALUE_STRING) {
+            throw new JsonParseException(parser, "Expected string array element, but got " + token);
+        }
+
+        return parser.getText();
+    }
+}
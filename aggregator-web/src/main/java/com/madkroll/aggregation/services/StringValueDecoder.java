@@ -0,0 +1,24 @@
+package com.madkroll.aggregation.services;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+
+/**
+ * Decodes string value as is, e.g. track status.
+ */
+public class StringValueDecoder implements ValueDecoder<String> {
+
+    @Override
+    public String decode(final JsonParser parser) throws IOException {
+        switch (parser.currentToken()) {
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NULL:
+                return null;
+            default:
+                throw new JsonParseException(parser, "Expected string, but got " + parser.currentToken());
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.madkroll.aggregation.services;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+
+/**
+ * Decodes value of single response entry straight from parser tokens, into the type of the data provider.
+ */
+public interface ValueDecoder<V> {
+
+    /**
+     * Parser is positioned at the first token of the value, decoder consumes the whole value.
+     * All tokens of the value are already available.
+     *
+     * @return decoded value, null if backend has no value
+     */
+    V decode(JsonParser parser) throws IOException;
+
+    /**
+     * Decodes array or object value, which is already buffered, so the number of its elements is known upfront.
+     *
+     * @param elements number of elements of array or entries of object
+     * @return decoded value, null if backend has no value
+     */
+    default V decode(final JsonParser parser, final int elements) throws IOException {
+        return decode(parser);
+    }
+}
@@ -0,0 +1,44 @@
+package com.madkroll.aggregation.web;
+
+import com.madkroll.aggregation.dto.AggregationQuery;
+import com.madkroll.aggregation.dto.AggregationResponse;
+import com.madkroll.aggregation.services.AggregationService;
+import com.madkroll.aggregation.services.RequestTrace;
+import com.madkroll.aggregation.services.RequestTracer;
+import lombok.AllArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Serves many aggregation requests in single call, so their queries fill provider batches at once.
+ * Served the same way by servlet and reactive web application.
+ */
+@Log4j2
+@AllArgsConstructor
+@RequestMapping
+@RestController
+public class AggregationBatchController {
+
+    private final AggregationService aggregationService;
+    private final RequestTracer requestTracer;
+
+    @PostMapping(
+            path = "/aggregation/batch",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public CompletableFuture<List<AggregationResponse>> handleAggregateBatchRequest(
+            @RequestBody final List<AggregationQuery> requests
+    ) {
+        final RequestTrace trace = requestTracer.start();
+        log.debug("batch of {} requests", requests.size());
+        return aggregationService.computeAndMergeAll(requests, trace);
+    }
+}
@@ -2,15 +2,21 @@ package com.madkroll.aggregation.web;
 
 import com.madkroll.aggregation.dto.AggregationResponse;
 import com.madkroll.aggregation.services.AggregationService;
+import com.madkroll.aggregation.services.RequestTrace;
+import com.madkroll.aggregation.services.RequestTracer;
 import lombok.AllArgsConstructor;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.MediaType;
+import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
@@ -19,20 +25,23 @@ import java.util.concurrent.CompletableFuture;
 @RequestMapping
 @RestController
 @EnableWebMvc
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "executors.mode", havingValue = "platform", matchIfMissing = true)
 public class AggregationController {
 
     private final AggregationService aggregationService;
+    private final RequestTracer requestTracer;
 
     @GetMapping(
             path = "/aggregation",
             produces = MediaType.APPLICATION_JSON_VALUE
     )
     public CompletableFuture<AggregationResponse> handleAggregateRequest(
-            @RequestParam(name = "pricing", required = false) final Set<String> pricing,
-            @RequestParam(name = "track", required = false) final Set<String> track,
-            @RequestParam(name = "shipments", required = false) final Set<String> shipments
+            @RequestParam final MultiValueMap<String, String> parameters
     ) {
-        log.debug("pricing: {}, track: {}, shipments: {}", pricing, track, shipments);
-        return aggregationService.computeAndMerge(pricing, track, shipments);
+        final RequestTrace trace = requestTracer.start();
+        final Map<String, Set<String>> queries = ProviderQueries.of(parameters);
+        log.debug("queries: {}", queries);
+        return aggregationService.computeAndMerge(queries, trace);
     }
 }
@@ -1,5 +1,6 @@
 package com.madkroll.aggregation.web;
 
+import com.madkroll.aggregation.services.AdmissionRejectedException;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -12,6 +13,15 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 @ControllerAdvice
 public class AggregationExceptionHandler {
 
+    /**
+     * Fails fast once any data provider is overloaded, so clients back off instead of requests queuing up.
+     */
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public void admissionRejectedHandler(final AdmissionRejectedException admissionRejectedException) {
+        log.debug(admissionRejectedException.getMessage());
+    }
+
     /**
      * Handles all other error cases when no any handler matched to prevent leaking internal specifics to clients.
      * */
@@ -0,0 +1,69 @@
+package com.madkroll.aggregation.web;
+
+import com.madkroll.aggregation.dto.AggregationResponse;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractEncoder;
+import org.springframework.core.codec.EncodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Writes aggregation response of reactive web application, see AggregationResponseWriter.
+ * Response is written right into buffer of the server buffer factory, pooled on Netty, without copying.
+ */
+public class AggregationResponseEncoder extends AbstractEncoder<AggregationResponse> {
+
+    private final AggregationResponseWriter writer;
+
+    public AggregationResponseEncoder(final AggregationResponseWriter writer) {
+        super(MediaType.APPLICATION_JSON);
+        this.writer = writer;
+    }
+
+    @Override
+    public boolean canEncode(final ResolvableType elementType, final MimeType mimeType) {
+        return AggregationResponse.class.isAssignableFrom(elementType.toClass()) && super.canEncode(elementType, mimeType);
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(
+            final Publisher<? extends AggregationResponse> inputStream,
+            final DataBufferFactory bufferFactory,
+            final ResolvableType elementType,
+            final MimeType mimeType,
+            final Map<String, Object> hints
+    ) {
+        return Flux.from(inputStream).map(response -> encodeValue(response, bufferFactory, elementType, mimeType, hints));
+    }
+
+    @Override
+    public DataBuffer encodeValue(
+            final AggregationResponse response,
+            final DataBufferFactory bufferFactory,
+            final ResolvableType valueType,
+            final MimeType mimeType,
+            final Map<String, Object> hints
+    ) {
+        final DataBuffer buffer = bufferFactory.allocateBuffer();
+        boolean written = false;
+        try {
+            writer.write(response, buffer.asOutputStream());
+            written = true;
+            return buffer;
+        } catch (IOException e) {
+            throw new EncodingException("Unable to write aggregation response", e);
+        } finally {
+            if (!written) {
+                DataBufferUtils.release(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.madkroll.aggregation.web;
+
+import com.madkroll.aggregation.dto.AggregationResponse;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+
+/**
+ * Writes aggregation response of servlet web application straight into response body, see AggregationResponseWriter.
+ * Write-only, responses are never read.
+ */
+public class AggregationResponseHttpMessageConverter extends AbstractHttpMessageConverter<AggregationResponse> {
+
+    private final AggregationResponseWriter writer;
+
+    public AggregationResponseHttpMessageConverter(final AggregationResponseWriter writer) {
+        super(MediaType.APPLICATION_JSON);
+        this.writer = writer;
+    }
+
+    @Override
+    protected boolean supports(final Class<?> clazz) {
+        return AggregationResponse.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(final Class<?> clazz, final MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected AggregationResponse readInternal(
+            final Class<? extends AggregationResponse> clazz,
+            final HttpInputMessage inputMessage
+    ) {
+        throw new HttpMessageNotReadableException("Aggregation response is never read", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(
+            final AggregationResponse response,
+            final HttpOutputMessage outputMessage
+    ) throws IOException {
+        writer.write(response, outputMessage.getBody());
+    }
+}
@@ -0,0 +1,103 @@
+package com.madkroll.aggregation.web;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.madkroll.aggregation.dto.AggregationResponse;
+import com.madkroll.aggregation.services.CachedResponse;
+import com.madkroll.aggregation.services.DataProvider;
+import com.madkroll.aggregation.services.DataProviderRegistry;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Streams aggregation response straight into output with JSON generator, writing the same JSON as object mapper.
+ * <p>
+ * Values of data providers are written by their type without resolving serializers per response,
+ * values still served by cache entry of their provider as raw bytes of JSON serialized once per cache entry.
+ * Generator buffers are recycled by Jackson, so nothing but the output is allocated per response.
+ */
+@Component
+public class AggregationResponseWriter {
+
+    private final JsonFactory jsonFactory;
+
+    // serializes values of unknown type and cached values the first time they are written
+    private final ObjectWriter valueWriter;
+
+    // providers whose cache entries memoize JSON of values they serve
+    private final DataProviderRegistry dataProviderRegistry;
+
+    // provider names encoded once, there are as many as registered providers
+    private final ConcurrentMap<String, SerializableString> providerNames = new ConcurrentHashMap<>();
+
+    public AggregationResponseWriter(final ObjectMapper objectMapper, final DataProviderRegistry dataProviderRegistry) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.valueWriter = objectMapper.writer();
+        this.dataProviderRegistry = dataProviderRegistry;
+    }
+
+    /**
+     * Writes response as UTF-8 JSON, output is flushed, but left open.
+     */
+    public void write(final AggregationResponse response, final OutputStream output) throws IOException {
+        try (JsonGenerator generator = jsonFactory.createGenerator(output, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartObject();
+            for (Map.Entry<String, Map<String, ?>> provider : response.getValues().entrySet()) {
+                generator.writeFieldName(providerNames.computeIfAbsent(provider.getKey(), SerializedString::new));
+                writeValues(generator, dataProviderRegistry.getProviders().get(provider.getKey()), provider.getValue());
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    private void writeValues(
+            final JsonGenerator generator,
+            final DataProvider<?> dataProvider,
+            final Map<String, ?> values
+    ) throws IOException {
+        generator.writeStartObject();
+        for (Map.Entry<String, ?> value : values.entrySet()) {
+            generator.writeFieldName(value.getKey());
+            final CachedResponse<?> cached =
+                    value.getValue() != null && dataProvider != null ? dataProvider.peekCached(value.getKey()) : null;
+            // the same instance only if served by the entry, not by a newer one or a value computed meanwhile
+            if (cached != null && cached.getValue() == value.getValue()) {
+                generator.writeRawValue(cached.toJson(valueWriter));
+            } else {
+                writeValue(generator, value.getValue());
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    private void writeValue(final JsonGenerator generator, final Object value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof String) {
+            generator.writeString((String) value);
+        } else if (value instanceof BigDecimal) {
+            generator.writeNumber((BigDecimal) value);
+        } else if (value instanceof List) {
+            generator.writeStartArray();
+            for (Object element : (List<?>) value) {
+                writeValue(generator, element);
+            }
+            generator.writeEndArray();
+        } else {
+            valueWriter.writeValue(generator, value);
+        }
+    }
+}
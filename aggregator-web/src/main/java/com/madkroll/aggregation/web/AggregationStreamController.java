@@ -0,0 +1,45 @@
+package com.madkroll.aggregation.web;
+
+import com.madkroll.aggregation.dto.AggregationSection;
+import com.madkroll.aggregation.services.AggregationService;
+import com.madkroll.aggregation.services.RequestTrace;
+import com.madkroll.aggregation.services.RequestTracer;
+import lombok.AllArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.http.MediaType;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streams section of every data provider as soon as it's computed, as Server-Sent Events or newline-delimited JSON.
+ * Served the same way by servlet and reactive web application.
+ */
+@Log4j2
+@AllArgsConstructor
+@RequestMapping
+@RestController
+public class AggregationStreamController {
+
+    private final AggregationService aggregationService;
+    private final RequestTracer requestTracer;
+
+    @GetMapping(
+            path = "/aggregation/stream",
+            produces = {MediaType.TEXT_EVENT_STREAM_VALUE, MediaType.APPLICATION_STREAM_JSON_VALUE}
+    )
+    public Flux<AggregationSection> handleAggregateStreamRequest(
+            @RequestParam final MultiValueMap<String, String> parameters
+    ) {
+        final RequestTrace trace = requestTracer.start();
+        final Map<String, Set<String>> queries = ProviderQueries.of(parameters);
+        log.debug("stream queries: {}", queries);
+        return aggregationService.computeAndStream(queries, trace);
+    }
+}
@@ -0,0 +1,38 @@
+package com.madkroll.aggregation.web;
+
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.StringUtils;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Converts query parameters of aggregation request into queries keyed by data provider name.
+ */
+final class ProviderQueries {
+
+    private ProviderQueries() {
+    }
+
+    /**
+     * Every parameter is named after data provider and holds comma-separated queries, e.g. pricing=NL,FR&track=1.
+     * Parameter may be repeated, queries are trimmed.
+     */
+    static Map<String, Set<String>> of(final MultiValueMap<String, String> parameters) {
+        final Map<String, Set<String>> queries = new HashMap<>();
+        parameters.forEach(
+                (providerName, values) -> {
+                    final Set<String> providerQueries = queries.computeIfAbsent(providerName, name -> new HashSet<>());
+                    for (String value : values) {
+                        for (String query : StringUtils.commaDelimitedListToStringArray(value)) {
+                            providerQueries.add(query.trim());
+                        }
+                    }
+                }
+        );
+
+        return queries;
+    }
+}
@@ -0,0 +1,47 @@
+package com.madkroll.aggregation.web;
+
+import com.madkroll.aggregation.dto.AggregationResponse;
+import com.madkroll.aggregation.services.AggregationService;
+import com.madkroll.aggregation.services.RequestTrace;
+import com.madkroll.aggregation.services.RequestTracer;
+import lombok.AllArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Serves the same API as {@link AggregationController}, but on Netty event loops instead of servlet threads.
+ * Enabled by spring.main.web-application-type: reactive.
+ */
+@Log4j2
+@AllArgsConstructor
+@RequestMapping
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveAggregationController {
+
+    private final AggregationService aggregationService;
+    private final RequestTracer requestTracer;
+
+    @GetMapping(
+            path = "/aggregation",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public Mono<AggregationResponse> handleAggregateRequest(
+            @RequestParam final MultiValueMap<String, String> parameters
+    ) {
+        final RequestTrace trace = requestTracer.start();
+        final Map<String, Set<String>> queries = ProviderQueries.of(parameters);
+        log.debug("queries: {}", queries);
+        return aggregationService.computeAndMergeReactive(queries, trace);
+    }
+}
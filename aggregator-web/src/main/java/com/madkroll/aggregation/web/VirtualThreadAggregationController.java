@@ -0,0 +1,52 @@
+package com.madkroll.aggregation.web;
+
+import com.madkroll.aggregation.dto.AggregationResponse;
+import com.madkroll.aggregation.services.AggregationService;
+import com.madkroll.aggregation.services.RequestTrace;
+import com.madkroll.aggregation.services.RequestTracer;
+import lombok.AllArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Serves the same API as {@link AggregationController}, but as plain blocking code running on virtual thread.
+ * Enabled by executors.mode: virtual.
+ */
+@Log4j2
+@AllArgsConstructor
+@RequestMapping
+@RestController
+@EnableWebMvc
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "executors.mode", havingValue = "virtual")
+public class VirtualThreadAggregationController {
+
+    private final AggregationService aggregationService;
+    private final RequestTracer requestTracer;
+
+    @GetMapping(
+            path = "/aggregation",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public Callable<AggregationResponse> handleAggregateRequest(
+            @RequestParam final MultiValueMap<String, String> parameters
+    ) {
+        final RequestTrace trace = requestTracer.start();
+        final Map<String, Set<String>> queries = ProviderQueries.of(parameters);
+        log.debug("queries: {}", queries);
+        // executed by virtual thread executor, see ExecutorConfiguration
+        return () -> aggregationService.computeAndMergeBlocking(queries, trace);
+    }
+}
@@ -0,0 +1,141 @@
+package com.madkroll.aggregation.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.madkroll.aggregation.dto.AggregationResponse;
+import com.madkroll.aggregation.services.BatchingService;
+import com.madkroll.aggregation.services.DataProvider;
+import com.madkroll.aggregation.services.DataProviderRegistry;
+import com.madkroll.aggregation.services.ProviderMetrics;
+import com.madkroll.aggregation.services.ResponseCache;
+import com.madkroll.aggregation.web.AggregationResponseWriter;
+import org.junit.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.HttpMessageWriter;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class AggregationConfigurationTest {
+
+    private static final String EXPECTED_JSON =
+            "{\"pricing\":{\"NL\":14.242090605778},\"track\":{\"109347263\":null},\"shipments\":{\"109347263\":[\"box\",\"pallet\"]}}";
+
+    private final AggregationConfiguration configuration = new AggregationConfiguration();
+
+    private final ObjectMapper objectMapper = configuration.objectMapper();
+
+    private final ResponseCache<List<String>> shipmentsCache = new ResponseCache<>(
+            new ConcurrentHashMap<>(), Duration.ofMinutes(1), Duration.ZERO, Duration.ZERO, Duration.ZERO, 0
+    );
+
+    private final AggregationResponseWriter writer = new AggregationResponseWriter(
+            objectMapper,
+            new DataProviderRegistry(
+                    Map.of(
+                            "pricing", newDataProvider(ResponseCache.disabled()),
+                            "track", newDataProvider(ResponseCache.disabled()),
+                            "shipments", newDataProvider(shipmentsCache)
+                    )
+            )
+    );
+
+    @Test
+    public void shouldWriteAggregationResponseByRegisteredHttpMessageConverter() throws Exception {
+        // given
+        final List<HttpMessageConverter<?>> converters = new ArrayList<>();
+        converters.add(new MappingJackson2HttpMessageConverter(objectMapper));
+        configuration.aggregationResponseConverterConfigurer(writer).extendMessageConverters(converters);
+        final AggregationResponse response = response();
+
+        // when
+        final MockHttpOutputMessage first = writeByConverter(converters, response);
+        final MockHttpOutputMessage second = writeByConverter(converters, response);
+
+        // then
+        assertThat(first.getBodyAsString(StandardCharsets.UTF_8)).isEqualTo(EXPECTED_JSON);
+        assertThat(second.getBodyAsString(StandardCharsets.UTF_8)).isEqualTo(EXPECTED_JSON);
+        assertThat(second.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+    }
+
+    @Test
+    public void shouldEncodeAggregationResponseByRegisteredEncoder() {
+        // given
+        final ServerCodecConfigurer codecConfigurer = ServerCodecConfigurer.create();
+        configuration.aggregationResponseEncoderConfigurer(writer).configureHttpMessageCodecs(codecConfigurer);
+        final AggregationResponse response = response();
+
+        // when
+        final MockServerHttpResponse first = writeByEncoder(codecConfigurer, response);
+        final MockServerHttpResponse second = writeByEncoder(codecConfigurer, response);
+
+        // then
+        assertThat(first.getBodyAsString().block()).isEqualTo(EXPECTED_JSON);
+        assertThat(second.getBodyAsString().block()).isEqualTo(EXPECTED_JSON);
+        assertThat(second.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+    }
+
+    @SuppressWarnings("unchecked")
+    private MockHttpOutputMessage writeByConverter(
+            final List<HttpMessageConverter<?>> converters,
+            final AggregationResponse response
+    ) throws Exception {
+        final HttpMessageConverter<AggregationResponse> converter =
+                (HttpMessageConverter<AggregationResponse>) converters.stream()
+                        .filter(candidate -> candidate.canWrite(AggregationResponse.class, MediaType.APPLICATION_JSON))
+                        .findFirst()
+                        .orElseThrow();
+        final MockHttpOutputMessage output = new MockHttpOutputMessage();
+        converter.write(response, MediaType.APPLICATION_JSON, output);
+        return output;
+    }
+
+    @SuppressWarnings("unchecked")
+    private MockServerHttpResponse writeByEncoder(
+            final ServerCodecConfigurer codecConfigurer,
+            final AggregationResponse response
+    ) {
+        final ResolvableType type = ResolvableType.forClass(AggregationResponse.class);
+        final HttpMessageWriter<AggregationResponse> messageWriter =
+                (HttpMessageWriter<AggregationResponse>) codecConfigurer.getWriters().stream()
+                        .filter(candidate -> candidate.canWrite(type, MediaType.APPLICATION_JSON))
+                        .findFirst()
+                        .orElseThrow();
+        final MockServerHttpResponse output = new MockServerHttpResponse();
+        messageWriter.write(Mono.just(response), type, MediaType.APPLICATION_JSON, output, Map.of()).block();
+        return output;
+    }
+
+    private AggregationResponse response() {
+        final List<String> cachedShipment = List.of("box", "pallet");
+        shipmentsCache.put("109347263", cachedShipment);
+        final Map<String, Object> track = new HashMap<>();
+        track.put("109347263", null);
+        final Map<String, Map<String, ?>> values = new LinkedHashMap<>();
+        values.put("pricing", Map.of("NL", new BigDecimal("14.242090605778")));
+        values.put("track", track);
+        values.put("shipments", Map.of("109347263", cachedShipment));
+        return new AggregationResponse(values);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> DataProvider<V> newDataProvider(final ResponseCache<V> responseCache) {
+        return new DataProvider<>(1, mock(BatchingService.class), responseCache, ProviderMetrics.disabled());
+    }
+}
@@ -0,0 +1,92 @@
+package com.madkroll.aggregation.config;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.GzipSink;
+import okio.Okio;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WebClientFactoryTest {
+
+    private static final String BODY = "{\"NL\": 14.24}";
+
+    private final MockWebServer mockWebServer = new MockWebServer();
+
+    private final WebClientFactory webClientFactory = new WebClientFactory();
+
+    @Before
+    public void setUp() throws IOException {
+        mockWebServer.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        webClientFactory.shutdown();
+        mockWebServer.shutdown();
+    }
+
+    @Test
+    public void shouldRequestAndDecompressGzipResponse() throws Exception {
+        // given
+        mockWebServer.enqueue(
+                new MockResponse()
+                        .setHeader("Content-Encoding", "gzip")
+                        .setBody(gzip(BODY))
+        );
+
+        // when
+        final String response = retrieve(newClient(true));
+
+        // then
+        assertThat(response).isEqualTo(BODY);
+        final RecordedRequest request = mockWebServer.takeRequest(1, TimeUnit.SECONDS);
+        assertThat(request.getHeader("Accept-Encoding")).contains("gzip");
+    }
+
+    @Test
+    public void shouldNotRequestCompressionIfDisabled() throws Exception {
+        // given
+        mockWebServer.enqueue(new MockResponse().setBody(BODY));
+
+        // when
+        final String response = retrieve(newClient(false));
+
+        // then
+        assertThat(response).isEqualTo(BODY);
+        final RecordedRequest request = mockWebServer.takeRequest(1, TimeUnit.SECONDS);
+        assertThat(request.getHeader("Accept-Encoding")).isNull();
+    }
+
+    private WebClient newClient(final boolean compress) {
+        return webClientFactory.create(
+                "test",
+                mockWebServer.url("/").toString(),
+                compress,
+                new BackendPoolSettings()
+        );
+    }
+
+    private String retrieve(final WebClient webClient) {
+        return webClient.get().retrieve().bodyToMono(String.class).block(Duration.ofSeconds(5));
+    }
+
+    private Buffer gzip(final String body) throws IOException {
+        final Buffer compressed = new Buffer();
+        try (var sink = Okio.buffer(new GzipSink(compressed))) {
+            sink.writeString(body, StandardCharsets.UTF_8);
+        }
+        return compressed;
+    }
+}
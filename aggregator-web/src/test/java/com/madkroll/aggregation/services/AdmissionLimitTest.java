@@ -0,0 +1,84 @@
+package com.madkroll.aggregation.services;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AdmissionLimitTest {
+
+    private static final long LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void shouldAdmitUpToLimit() {
+        // given
+        final AdmissionLimit admissionLimit = AdmissionLimit.fixed(2);
+
+        // when
+        assertThat(admissionLimit.tryAcquire()).isTrue();
+        assertThat(admissionLimit.tryAcquire()).isTrue();
+
+        // then
+        assertThat(admissionLimit.tryAcquire()).isFalse();
+        // and once released
+        admissionLimit.release(LATENCY_NANOS);
+        assertThat(admissionLimit.tryAcquire()).isTrue();
+        assertThat(admissionLimit.getInFlight()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldKeepFixedLimitWhateverLatency() {
+        // given
+        final AdmissionLimit admissionLimit = AdmissionLimit.fixed(10);
+
+        // when
+        completeQueries(admissionLimit, 100, LATENCY_NANOS * 100);
+
+        // then
+        assertThat(admissionLimit.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    public void shouldGrowAdaptiveLimitWhileLatencyStaysFlat() {
+        // given
+        final AdmissionLimit admissionLimit = AdmissionLimit.adaptive(10, 5, 100);
+
+        // when
+        completeQueries(admissionLimit, 200, LATENCY_NANOS);
+
+        // then
+        assertThat(admissionLimit.getLimit()).isEqualTo(100);
+    }
+
+    @Test
+    public void shouldShrinkAdaptiveLimitOnceLatencyGrows() {
+        // given
+        final AdmissionLimit admissionLimit = AdmissionLimit.adaptive(100, 5, 100);
+        completeQueries(admissionLimit, 100, LATENCY_NANOS);
+
+        // when
+        completeQueries(admissionLimit, 20, LATENCY_NANOS * 10);
+
+        // then
+        assertThat(admissionLimit.getLimit()).isLessThan(50);
+    }
+
+    @Test
+    public void shouldFailIfLimitIsNotPositive() {
+        assertThatThrownBy(() -> AdmissionLimit.fixed(0))
+                .isExactlyInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Admission limit must be positive: 0");
+    }
+
+    private void completeQueries(final AdmissionLimit admissionLimit, final int queries, final long latencyNanos) {
+        IntStream.range(0, queries).forEach(
+                query -> {
+                    assertThat(admissionLimit.tryAcquire()).isTrue();
+                    admissionLimit.release(latencyNanos);
+                }
+        );
+    }
+}
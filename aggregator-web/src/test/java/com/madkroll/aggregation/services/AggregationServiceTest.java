@@ -1,15 +1,24 @@
 package com.madkroll.aggregation.services;
 
+import com.madkroll.aggregation.dto.AggregationQuery;
 import com.madkroll.aggregation.dto.AggregationResponse;
+import com.madkroll.aggregation.dto.AggregationSection;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -54,14 +63,29 @@ public class AggregationServiceTest {
     @Mock
     private DataProvider<List<String>> shipmentsProvider;
 
+    @Mock
+    private DataProvider<String> etaProvider;
+
     @Mock
     private NoResponseMapper noResponseMapper;
 
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     private AggregationService aggregationService;
 
     @Before
     public void setUp() {
-        aggregationService = new AggregationService(pricingProvider, trackProvider, shipmentsProvider, noResponseMapper);
+        final Map<String, DataProvider<?>> providers = new LinkedHashMap<>();
+        providers.put("pricing", pricingProvider);
+        providers.put("track", trackProvider);
+        providers.put("shipments", shipmentsProvider);
+
+        aggregationService = new AggregationService(
+                new DataProviderRegistry(providers),
+                noResponseMapper,
+                ForkJoinPool.commonPool(),
+                meterRegistry
+        );
     }
 
     @Test
@@ -73,7 +97,7 @@ public class AggregationServiceTest {
 
         // when
         final CompletableFuture<AggregationResponse> resultComputation = aggregationService.computeAndMerge(
-                PRICING_QUERIES, TRACK_QUERIES, SHIPMENTS_QUERIES
+                queries(PRICING_QUERIES, TRACK_QUERIES, SHIPMENTS_QUERIES)
         );
 
         // then
@@ -94,9 +118,12 @@ public class AggregationServiceTest {
                         .get()
         )
                 .usingRecursiveComparison()
-                .isEqualTo(new AggregationResponse(DEFAULT_PRICING_VALUES_OK, DEFAULT_TRACK_VALUES_OK, DEFAULT_SHIPMENTS_VALUES_OK));
+                .isEqualTo(response(DEFAULT_PRICING_VALUES_OK, DEFAULT_TRACK_VALUES_OK, DEFAULT_SHIPMENTS_VALUES_OK));
 
         verifyNoInteractions(noResponseMapper);
+        assertThat(meterRegistry.get("aggregation.request.latency").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("aggregation.provider.latency").timers()).hasSize(3)
+                .allSatisfy(latency -> assertThat(latency.count()).isEqualTo(1));
     }
 
     @Test
@@ -106,8 +133,7 @@ public class AggregationServiceTest {
 
         // when
         final CompletableFuture<AggregationResponse> resultComputation = aggregationService.computeAndMerge(
-                PRICING_QUERIES,
-                TRACK_NO_QUERIES, SHIPMENTS_NO_QUERIES
+                queries(PRICING_QUERIES, TRACK_NO_QUERIES, SHIPMENTS_NO_QUERIES)
         );
 
         // then
@@ -121,7 +147,7 @@ public class AggregationServiceTest {
                         .get()
         )
                 .usingRecursiveComparison()
-                .isEqualTo(new AggregationResponse(DEFAULT_PRICING_VALUES_OK, Map.of(), Map.of()));
+                .isEqualTo(response(DEFAULT_PRICING_VALUES_OK, Map.of(), Map.of()));
 
         verifyNoInteractions(noResponseMapper);
     }
@@ -135,8 +161,7 @@ public class AggregationServiceTest {
 
         // when
         final CompletableFuture<AggregationResponse> resultComputation = aggregationService.computeAndMerge(
-                PRICING_QUERIES,
-                TRACK_NO_QUERIES, SHIPMENTS_NO_QUERIES
+                queries(PRICING_QUERIES, TRACK_NO_QUERIES, SHIPMENTS_NO_QUERIES)
         );
 
         final Map<String, BigDecimal> expectedResponse = new HashMap<>();
@@ -157,12 +182,294 @@ public class AggregationServiceTest {
         )
                 .usingRecursiveComparison()
                 .isEqualTo(
-                        new AggregationResponse(
+                        response(
                                 expectedResponse, Map.of(), Map.of()
                         )
                 );
     }
 
+    @Test
+    public void shouldRespondWithValuesOfEveryRegisteredProviderOnly() throws Exception {
+        // given
+        final Map<String, DataProvider<?>> providers = new LinkedHashMap<>();
+        providers.put("track", trackProvider);
+        providers.put("eta", etaProvider);
+        final AggregationService registeredOnly = new AggregationService(
+                new DataProviderRegistry(providers),
+                noResponseMapper,
+                ForkJoinPool.commonPool(),
+                new SimpleMeterRegistry()
+        );
+        final List<QueryComputation<String>> trackComputations = mockProvider(trackProvider, TRACK_QUERIES);
+        final List<QueryComputation<String>> etaComputations = mockProvider(etaProvider, Set.of("eta-key-1"));
+
+        // when
+        final CompletableFuture<AggregationResponse> resultComputation = registeredOnly.computeAndMerge(
+                Map.of("pricing", PRICING_QUERIES, "track", TRACK_QUERIES, "eta", Set.of("eta-key-1"))
+        );
+        completeAllOK(trackComputations, DEFAULT_TRACK_VALUES_OK);
+        completeAllOK(etaComputations, Map.of("eta-key-1", "2020-07-01"));
+
+        // then
+        assertThat(resultComputation.orTimeout(1, TimeUnit.SECONDS).get().getValues())
+                .containsExactly(
+                        Map.entry("track", DEFAULT_TRACK_VALUES_OK),
+                        Map.entry("eta", Map.of("eta-key-1", "2020-07-01"))
+                );
+        verifyNoInteractions(pricingProvider);
+    }
+
+    @Test
+    public void shouldFetchQueriesOfAllRequestsTogether() throws Exception {
+        // given
+        final List<QueryComputation<BigDecimal>> priceComputations = mockProvider(pricingProvider, PRICING_QUERIES);
+        final List<QueryComputation<String>> trackComputations = mockProvider(trackProvider, TRACK_QUERIES);
+        mockProvider(shipmentsProvider, SHIPMENTS_NO_QUERIES);
+        final List<AggregationQuery> requests = List.of(
+                new AggregationQuery(queries(Set.of("pricing-key-1"), Set.of("track-key-1", "track-key-2"), null)),
+                new AggregationQuery(queries(Set.of("pricing-key-1", "pricing-key-2"), Set.of("track-key-2"), Set.of()))
+        );
+
+        // when
+        final CompletableFuture<List<AggregationResponse>> resultComputation =
+                aggregationService.computeAndMergeAll(requests, RequestTrace.none());
+        completeAllOK(priceComputations, DEFAULT_PRICING_VALUES_OK);
+        completeAllOK(trackComputations, DEFAULT_TRACK_VALUES_OK);
+
+        // then
+        assertThat(resultComputation.orTimeout(1, TimeUnit.SECONDS).get())
+                .usingRecursiveFieldByFieldElementComparator()
+                .containsExactly(
+                        response(
+                                Map.of("pricing-key-1", BigDecimal.ONE),
+                                DEFAULT_TRACK_VALUES_OK,
+                                Map.of()
+                        ),
+                        response(
+                                DEFAULT_PRICING_VALUES_OK,
+                                Map.of("track-key-2", "track-value-2"),
+                                Map.of()
+                        )
+                );
+    }
+
+    @Test
+    public void shouldZipResponsesOfAllProvidersReactively() {
+        // given
+        final List<QueryComputation<BigDecimal>> priceComputations = mockProvider(pricingProvider, PRICING_QUERIES);
+        final List<QueryComputation<String>> trackComputations = mockProvider(trackProvider, TRACK_QUERIES);
+        final List<QueryComputation<List<String>>> shipmentsComputations = mockProvider(shipmentsProvider, SHIPMENTS_QUERIES);
+
+        // when
+        final Mono<AggregationResponse> resultComputation = aggregationService.computeAndMergeReactive(
+                queries(PRICING_QUERIES, TRACK_QUERIES, SHIPMENTS_QUERIES)
+        );
+
+        // then
+        StepVerifier.create(resultComputation)
+                .then(() -> completeAllOK(priceComputations, DEFAULT_PRICING_VALUES_OK))
+                .then(() -> completeAllOK(trackComputations, DEFAULT_TRACK_VALUES_OK))
+                .expectNoEvent(Duration.ofMillis(20))
+                .then(() -> completeAllOK(shipmentsComputations, DEFAULT_SHIPMENTS_VALUES_OK))
+                .assertNext(
+                        response -> assertThat(response)
+                                .usingRecursiveComparison()
+                                .isEqualTo(
+                                        response(
+                                                DEFAULT_PRICING_VALUES_OK, DEFAULT_TRACK_VALUES_OK, DEFAULT_SHIPMENTS_VALUES_OK
+                                        )
+                                )
+                )
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+
+        verifyNoInteractions(noResponseMapper);
+    }
+
+    @Test
+    public void shouldStreamSectionOfEveryProviderAsSoonAsItIsComputed() {
+        // given
+        final List<QueryComputation<BigDecimal>> priceComputations = mockProvider(pricingProvider, PRICING_QUERIES);
+        final List<QueryComputation<String>> trackComputations = mockProvider(trackProvider, TRACK_QUERIES);
+        mockProvider(shipmentsProvider, SHIPMENTS_NO_QUERIES);
+
+        // when
+        final Flux<AggregationSection> sections = aggregationService.computeAndStream(
+                queries(PRICING_QUERIES, TRACK_QUERIES, SHIPMENTS_NO_QUERIES), RequestTrace.none()
+        );
+
+        // then
+        StepVerifier.create(sections)
+                .assertNext(section -> assertSection(section, "shipments", Map.of()))
+                .then(() -> completeAllOK(trackComputations, DEFAULT_TRACK_VALUES_OK))
+                .assertNext(section -> assertSection(section, "track", DEFAULT_TRACK_VALUES_OK))
+                .expectNoEvent(Duration.ofMillis(20))
+                .then(() -> completeAllOK(priceComputations, DEFAULT_PRICING_VALUES_OK))
+                .assertNext(section -> assertSection(section, "pricing", DEFAULT_PRICING_VALUES_OK))
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+
+        assertThat(meterRegistry.get("aggregation.request.latency").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRecordLatencyOnceStreamIsCancelled() {
+        // given
+        mockProvider(pricingProvider, PRICING_QUERIES);
+        mockProvider(trackProvider, TRACK_QUERIES);
+        mockProvider(shipmentsProvider, SHIPMENTS_NO_QUERIES);
+
+        // when
+        final Flux<AggregationSection> sections = aggregationService.computeAndStream(
+                queries(PRICING_QUERIES, TRACK_QUERIES, SHIPMENTS_NO_QUERIES), RequestTrace.none()
+        );
+
+        // then
+        // client disconnects once the first section is sent, the rest is never computed
+        StepVerifier.create(sections)
+                .assertNext(section -> assertSection(section, "shipments", Map.of()))
+                .thenCancel()
+                .verify(Duration.ofSeconds(1));
+
+        assertThat(meterRegistry.get("aggregation.request.latency").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("aggregation.provider.latency").tag("provider", "pricing").timer().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("aggregation.provider.latency").tag("provider", "track").timer().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void shouldBlockUntilAllProvidersCompleted() throws Exception {
+        // given
+        final List<QueryComputation<BigDecimal>> priceComputations = mockProvider(pricingProvider, PRICING_QUERIES);
+        final List<QueryComputation<String>> trackComputations = mockProvider(trackProvider, TRACK_QUERIES);
+        final List<QueryComputation<List<String>>> shipmentsComputations = mockProvider(shipmentsProvider, SHIPMENTS_QUERIES);
+
+        // when
+        final CompletableFuture<AggregationResponse> resultComputation = CompletableFuture.supplyAsync(
+                () -> aggregationService.computeAndMergeBlocking(
+                        queries(PRICING_QUERIES, TRACK_QUERIES, SHIPMENTS_QUERIES)
+                )
+        );
+
+        // then
+        completeAllOK(priceComputations, DEFAULT_PRICING_VALUES_OK);
+        completeAllOK(trackComputations, DEFAULT_TRACK_VALUES_OK);
+        assertThat(resultComputation.isDone()).isFalse();
+        // and only when
+        completeAllOK(shipmentsComputations, DEFAULT_SHIPMENTS_VALUES_OK);
+        assertThat(resultComputation.get(1, TimeUnit.SECONDS))
+                .usingRecursiveComparison()
+                .isEqualTo(response(DEFAULT_PRICING_VALUES_OK, DEFAULT_TRACK_VALUES_OK, DEFAULT_SHIPMENTS_VALUES_OK));
+
+        verifyNoInteractions(noResponseMapper);
+    }
+
+    @Test
+    public void shouldRespondWithNoValuesOnceBlockedThreadIsInterrupted() throws Exception {
+        // given
+        mockProvider(pricingProvider, PRICING_QUERIES);
+        mockProvider(trackProvider, TRACK_NO_QUERIES);
+        mockProvider(shipmentsProvider, SHIPMENTS_NO_QUERIES);
+        given(noResponseMapper.noResponseMap(PRICING_QUERIES)).willReturn(mapAllToNull(PRICING_QUERIES));
+        final CompletableFuture<AggregationResponse> resultComputation = new CompletableFuture<>();
+        final Thread blocked = new Thread(
+                () -> resultComputation.complete(
+                        aggregationService.computeAndMergeBlocking(
+                                queries(PRICING_QUERIES, TRACK_NO_QUERIES, SHIPMENTS_NO_QUERIES)
+                        )
+                )
+        );
+
+        // when
+        blocked.start();
+        blocked.interrupt();
+
+        // then
+        assertThat(resultComputation.get(1, TimeUnit.SECONDS))
+                .usingRecursiveComparison()
+                .isEqualTo(response(mapAllToNull(PRICING_QUERIES), Map.of(), Map.of()));
+        blocked.join(1_000);
+        assertThat(blocked.isAlive()).isFalse();
+    }
+
+    @Test
+    public void shouldReturnNullValuesPerEachFailedComputationWhenBlocking() {
+        // given
+        final List<QueryComputation<BigDecimal>> priceComputations = mockProvider(pricingProvider, PRICING_QUERIES);
+        priceComputations.forEach(
+                computation -> computation.getResponseCalculation().completeExceptionally(new IllegalStateException())
+        );
+
+        // when
+        final AggregationResponse response = aggregationService.computeAndMergeBlocking(
+                queries(PRICING_QUERIES, TRACK_NO_QUERIES, SHIPMENTS_NO_QUERIES)
+        );
+
+        // then
+        assertThat(response)
+                .usingRecursiveComparison()
+                .isEqualTo(response(mapAllToNull(PRICING_QUERIES), Map.of(), Map.of()));
+    }
+
+    @Test
+    public void shouldRecordLatencyBreakdownOfSampledRequest() throws Exception {
+        // given
+        final List<QueryComputation<BigDecimal>> priceComputations = mockProvider(pricingProvider, PRICING_QUERIES);
+        final List<QueryComputation<String>> trackComputations = mockProvider(trackProvider, TRACK_QUERIES);
+        mockProvider(shipmentsProvider, SHIPMENTS_NO_QUERIES);
+        final RequestTrace trace = new RequestTrace("trace-id", System.nanoTime());
+
+        // when
+        final CompletableFuture<AggregationResponse> resultComputation = aggregationService.computeAndMerge(
+                queries(PRICING_QUERIES, TRACK_QUERIES, SHIPMENTS_NO_QUERIES), trace
+        );
+        completeAllOK(priceComputations, DEFAULT_PRICING_VALUES_OK);
+        completeAllOK(trackComputations, DEFAULT_TRACK_VALUES_OK);
+        resultComputation.orTimeout(1, TimeUnit.SECONDS).get();
+
+        // then
+        assertThat(trace.getSpans()).containsOnlyKeys(
+                "controller",
+                "pricing.fetch",
+                "track.fetch",
+                "shipments.fetch",
+                // never dispatched by mocked providers
+                "pricing.timeout",
+                "track.timeout",
+                "merge"
+        );
+    }
+
+    private Map<String, Set<String>> queries(
+            final Set<String> pricing,
+            final Set<String> track,
+            final Set<String> shipments
+    ) {
+        final Map<String, Set<String>> queries = new HashMap<>();
+        queries.put("pricing", pricing);
+        queries.put("track", track);
+        queries.put("shipments", shipments);
+        return queries;
+    }
+
+    private AggregationResponse response(
+            final Map<String, ?> pricing,
+            final Map<String, ?> track,
+            final Map<String, ?> shipments
+    ) {
+        final Map<String, Map<String, ?>> values = new LinkedHashMap<>();
+        values.put("pricing", pricing);
+        values.put("track", track);
+        values.put("shipments", shipments);
+        return new AggregationResponse(values);
+    }
+
+    private void assertSection(final AggregationSection section, final String provider, final Map<String, ?> values) {
+        assertThat(section.getProvider()).isEqualTo(provider);
+        assertThat(section.getValues()).isEqualTo(values);
+    }
+
     private <V> List<QueryComputation<V>> mockProvider(final DataProvider<V> provider, final Set<String> queries) {
         final List<QueryComputation<V>> computations = queries.stream()
                 .map(query -> new QueryComputation<V>(query, new CompletableFuture<>(), 10))
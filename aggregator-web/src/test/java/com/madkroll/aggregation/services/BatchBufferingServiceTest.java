@@ -1,124 +1,257 @@
 package com.madkroll.aggregation.services;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
-import static org.mockito.Mockito.spy;
-import static org.mockito.Mockito.verifyNoInteractions;
 
 public class BatchBufferingServiceTest {
 
     private static final int BATCH_CAPACITY = 3;
-    private static final int BATCH_TIMEOUT_IN_SECONDS = 1;
+    private static final long BATCH_TIMEOUT_IN_MILLIS = 200;
     private static final List<String> CHUNK_FULL = List.of("1", "2", "3");
 
+    private final BlockingQueue<List<String>> dispatchedBatches = new LinkedBlockingQueue<>();
+
+    private final BatchBufferingService<String> batchBufferingService =
+            new BatchBufferingService<>(BATCH_CAPACITY, BATCH_TIMEOUT_IN_MILLIS, this::collect);
+
+    @After
+    public void tearDown() {
+        batchBufferingService.shutdown();
+    }
+
+    @Test
+    public void shouldDispatchBatchImmediatelyWhenCapacityReached() {
+        // when
+        CHUNK_FULL.forEach(batchBufferingService::submit);
+
+        // then
+        assertThat(dispatchedBatches).containsExactly(CHUNK_FULL);
+    }
+
+    @Test
+    public void shouldDispatchIncompleteBatchOnceTimeoutExceeded() throws Exception {
+        // given
+        final List<String> keepOneAvailable = CHUNK_FULL.subList(0, 2);
+
+        // when
+        keepOneAvailable.forEach(batchBufferingService::submit);
+
+        // then
+        assertThat(dispatchedBatches).isEmpty();
+        TimeUnit.MILLISECONDS.sleep(BATCH_TIMEOUT_IN_MILLIS / 2);
+        assertThat(dispatchedBatches).isEmpty();
+        // and once timeout exceeded
+        assertThat(dispatchedBatches.poll(1, TimeUnit.SECONDS)).isEqualTo(keepOneAvailable);
+    }
+
     @Test
-    public void shouldReturnBatchWithAllCompletedWhenCapacityReached() {
+    public void shouldRecordFillRatioToCapacityBatchIsSealedWith() throws Exception {
         // given
-        final LinkedBlockingQueue<CompletableFuture<String>> noSlots = spy(new LinkedBlockingQueue<>());
+        final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final BatchBufferingService<String> measured = new BatchBufferingService<>(
+                BatchSizing.fixed(BATCH_CAPACITY, BATCH_TIMEOUT_IN_MILLIS),
+                null,
+                0,
+                new ProviderMetrics(meterRegistry, "track"),
+                this::collect
+        );
 
         // when
-        final List<CompletableFuture<String>> completeBatch =
-                new BatchBufferingService<>(BATCH_CAPACITY, BATCH_TIMEOUT_IN_SECONDS, noSlots)
-                        .prepareBatch(CHUNK_FULL);
+        List.of("1", "2", "3", "4").forEach(measured::submit);
+        assertThat(dispatchedBatches.poll(1, TimeUnit.SECONDS)).isEqualTo(CHUNK_FULL);
+        assertThat(dispatchedBatches.poll(1, TimeUnit.SECONDS)).containsExactly("4");
+        measured.shutdown();
 
-        assertThat(completeBatch).hasSize(BATCH_CAPACITY);
+        // then
+        final DistributionSummary fillRatio = meterRegistry.get("aggregation.batch.fill.ratio").summary();
+        assertThat(fillRatio.count()).isEqualTo(2);
+        assertThat(fillRatio.max()).isEqualTo(1);
+        assertThat(fillRatio.totalAmount()).isEqualTo(1 + 1.0 / BATCH_CAPACITY);
+        assertThat(meterRegistry.get("aggregation.batch.sealed").tag("cause", "full").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("aggregation.batch.sealed").tag("cause", "timer").counter().count()).isEqualTo(1);
+    }
 
-        assertThat(
-                completeBatch.stream()
-                        .map(future -> future.getNow(null))
-                        .collect(Collectors.toList())
-        ).containsExactlyInAnyOrderElementsOf(CHUNK_FULL);
+    @Test
+    public void shouldOpenNextBatchOnceCurrentIsFull() throws Exception {
+        // when
+        List.of("1", "2", "3", "4").forEach(batchBufferingService::submit);
 
-        verifyNoInteractions(noSlots);
+        // then
+        assertThat(dispatchedBatches.poll()).isEqualTo(CHUNK_FULL);
+        assertThat(dispatchedBatches.poll(1, TimeUnit.SECONDS)).containsExactly("4");
     }
 
     @Test
-    public void shouldFeedOneAndProvideAvailableSlotsLeft() throws Exception {
+    public void shouldOpenNextBatchOnceCurrentIsExpired() throws Exception {
         // given
-        final CompletableFuture<String> availableSlot = new CompletableFuture<>();
-        final LinkedBlockingQueue<CompletableFuture<String>> oneSlotIsAvailable =
-                spy(new LinkedBlockingQueue<>(List.of(availableSlot)));
-        final List<String> oneFeedOneLeft = CHUNK_FULL.subList(0, 2);
+        batchBufferingService.submit("1");
+        assertThat(dispatchedBatches.poll(1, TimeUnit.SECONDS)).containsExactly("1");
 
         // when
-        final List<CompletableFuture<String>> incompleteBatch =
-                new BatchBufferingService<>(BATCH_CAPACITY, BATCH_TIMEOUT_IN_SECONDS, oneSlotIsAvailable)
-                        .prepareBatch(oneFeedOneLeft);
-
-        assertThat(incompleteBatch).hasSize(BATCH_CAPACITY);
-        assertThat(availableSlot.get()).isEqualTo(oneFeedOneLeft.get(0));
-        assertThat(oneSlotIsAvailable).hasSize(BATCH_CAPACITY - 1); // one left, the rest are available
-        assertThat(incompleteBatch.stream().filter(CompletableFuture::isDone).count()).isEqualTo(1);
-        assertThat(incompleteBatch.stream().filter(CompletableFuture::isDone).findFirst().get().get()).isEqualTo(oneFeedOneLeft.get(1));
+        CHUNK_FULL.forEach(batchBufferingService::submit);
+
+        // then
+        assertThat(dispatchedBatches.poll()).isEqualTo(CHUNK_FULL);
     }
 
     @Test
-    public void shouldFeedLastIgnoringCompletedSlotAndReturnEmptyBatch() throws Exception {
+    public void shouldDispatchEachItemExactlyOnceWhenSubmittedConcurrently() throws Exception {
         // given
-        final CompletableFuture<String> completed = new CompletableFuture<>();
-        completed.complete("already-completed");
-        final CompletableFuture<String> availableSlot = new CompletableFuture<>();
-        final LinkedBlockingQueue<CompletableFuture<String>> oneCompletedOneAvailable =
-                spy(new LinkedBlockingQueue<>(List.of(completed, availableSlot)));
-        final List<String> feedLast = CHUNK_FULL.subList(0, 1);
+        final int threads = 8;
+        final int itemsPerThread = 2_000;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
 
         // when
-        final List<CompletableFuture<String>> emptyBatch =
-                new BatchBufferingService<>(BATCH_CAPACITY, BATCH_TIMEOUT_IN_SECONDS, oneCompletedOneAvailable)
-                        .prepareBatch(feedLast);
+        final List<Future<?>> submitting = IntStream.range(0, threads)
+                .mapToObj(
+                        thread -> executor.submit(() -> {
+                            start.await();
+                            for (int item = 0; item < itemsPerThread; item++) {
+                                batchBufferingService.submit(thread + "-" + item);
+                            }
+                            return null;
+                        })
+                )
+                .collect(Collectors.toList());
+        start.countDown();
+        for (Future<?> next : submitting) {
+            next.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // then
+        final List<String> dispatchedItems = new ArrayList<>();
+        while (dispatchedItems.size() < threads * itemsPerThread) {
+            final List<String> batch = dispatchedBatches.poll(1, TimeUnit.SECONDS);
+            assertThat(batch).isNotNull();
+            assertThat(batch).hasSizeBetween(1, BATCH_CAPACITY);
+            dispatchedItems.addAll(batch);
+        }
 
-        assertThat(emptyBatch).isEmpty();
-        assertThat(availableSlot.get()).isEqualTo(feedLast.get(0));
-        assertThat(oneCompletedOneAvailable).isEmpty();
+        assertThat(dispatchedItems).doesNotHaveDuplicates().hasSize(threads * itemsPerThread);
+        assertThat(dispatchedBatches.poll(BATCH_TIMEOUT_IN_MILLIS * 2, TimeUnit.MILLISECONDS)).isNull();
     }
 
     @Test
-    public void shouldCompleteFreeSlotsInBatchToNullOnceTimeoutExceeded() throws Exception {
+    public void shouldSealBatchBeforeTimeoutIfAdaptiveSizingExpectsNoMoreItems() throws Exception {
         // given
-        final LinkedBlockingQueue<CompletableFuture<String>> noSlots = spy(new LinkedBlockingQueue<>());
-        final List<String> keepOneAvailable = CHUNK_FULL.subList(0, 2);
+        final BatchBufferingService<String> adaptive = new BatchBufferingService<>(
+                BatchSizing.adaptive(BATCH_CAPACITY, BATCH_CAPACITY, BATCH_TIMEOUT_IN_MILLIS * 10, 20),
+                this::collect
+        );
 
-        // when
-        final List<CompletableFuture<String>> awaitingOneSlot =
-                new BatchBufferingService<>(BATCH_CAPACITY, BATCH_TIMEOUT_IN_SECONDS, noSlots)
-                        .prepareBatch(keepOneAvailable);
-
-        assertThat(awaitingOneSlot).hasSize(BATCH_CAPACITY);
-        // make sure it completes future anyway once timeout exceeded
-        CompletableFuture.allOf(awaitingOneSlot.toArray(CompletableFuture[]::new)).get(BATCH_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
-        assertThat(awaitingOneSlot.stream().map(future -> future.getNow(null)).filter(Objects::nonNull).collect(Collectors.toList()))
-                .containsExactlyInAnyOrderElementsOf(keepOneAvailable);
-        assertThat(awaitingOneSlot.stream().map(future -> future.getNow(null)).filter(Objects::isNull).count())
-                .isEqualTo(1);
+        try {
+            // when
+            adaptive.submit("1");
+
+            // then
+            assertThat(dispatchedBatches.poll(BATCH_TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS)).containsExactly("1");
+        } finally {
+            adaptive.shutdown();
+        }
     }
 
     @Test
-    public void shouldReturnEmptyBatchIfChunkIsEmpty() {
-        // when
-        final List<CompletableFuture<String>> awaitingOneSlot =
-                new BatchBufferingService<String>(BATCH_CAPACITY, BATCH_TIMEOUT_IN_SECONDS, new LinkedBlockingQueue<>())
-                        .prepareBatch(List.of());
+    public void shouldSealBatchOnceItemHasJustFlushBudgetLeftToDeadline() throws Exception {
+        // given
+        final Map<String, Long> deadlines = new ConcurrentHashMap<>();
+        final BatchBufferingService<String> deadlineAware = new BatchBufferingService<>(
+                BatchSizing.fixed(BATCH_CAPACITY, BATCH_TIMEOUT_IN_MILLIS * 10),
+                deadlines::get,
+                BATCH_TIMEOUT_IN_MILLIS,
+                ProviderMetrics.disabled(),
+                this::collect
+        );
+        final long now = System.nanoTime();
+        deadlines.put("1", now + TimeUnit.SECONDS.toNanos(10));
+        deadlines.put("2", now + TimeUnit.MILLISECONDS.toNanos(BATCH_TIMEOUT_IN_MILLIS * 2));
+
+        try {
+            // when
+            deadlineAware.submit("1");
+            deadlineAware.submit("2");
 
-        assertThat(awaitingOneSlot).isEmpty();
+            // then
+            assertThat(dispatchedBatches.poll(BATCH_TIMEOUT_IN_MILLIS / 2, TimeUnit.MILLISECONDS)).isNull();
+            assertThat(dispatchedBatches.poll(BATCH_TIMEOUT_IN_MILLIS * 2, TimeUnit.MILLISECONDS))
+                    .containsExactly("1", "2");
+        } finally {
+            deadlineAware.shutdown();
+        }
     }
 
     @Test
-    public void shouldFailIfChunkIsLargerThanCapacity() {
-        // when
-        assertThatThrownBy(
-                () -> new BatchBufferingService<String>(1, BATCH_TIMEOUT_IN_SECONDS, new LinkedBlockingQueue<>())
-                        .prepareBatch(List.of("1", "2"))
-        )
+    public void shouldSealBatchByDeadlineOfItemAppendedBeforeFirstItemScheduledLinger() throws Exception {
+        // given
+        final Map<String, Long> deadlines = new ConcurrentHashMap<>();
+        final CountDownLatch firstClaimed = new CountDownLatch(1);
+        final CountDownLatch urgentAppended = new CountDownLatch(1);
+        final BatchBufferingService<String> deadlineAware = new BatchBufferingService<>(
+                BatchSizing.fixed(BATCH_CAPACITY, BATCH_TIMEOUT_IN_MILLIS * 10),
+                item -> {
+                    // first writer claimed its slot, but lingers before scheduling the seal
+                    if ("1".equals(item)) {
+                        firstClaimed.countDown();
+                        awaitUninterruptibly(urgentAppended);
+                    }
+                    return deadlines.get(item);
+                },
+                BATCH_TIMEOUT_IN_MILLIS,
+                ProviderMetrics.disabled(),
+                this::collect
+        );
+        final long now = System.nanoTime();
+        deadlines.put("1", now + TimeUnit.SECONDS.toNanos(10));
+        deadlines.put("2", now + TimeUnit.MILLISECONDS.toNanos(BATCH_TIMEOUT_IN_MILLIS));
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            // when
+            final Future<?> first = executor.submit(() -> deadlineAware.submit("1"));
+            firstClaimed.await(1, TimeUnit.SECONDS);
+            deadlineAware.submit("2");
+            urgentAppended.countDown();
+            first.get(1, TimeUnit.SECONDS);
+
+            // then
+            assertThat(dispatchedBatches.poll(BATCH_TIMEOUT_IN_MILLIS * 2, TimeUnit.MILLISECONDS))
+                    .containsExactly("1", "2");
+        } finally {
+            executor.shutdown();
+            deadlineAware.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldFailIfCapacityIsNotPositive() {
+        assertThatThrownBy(() -> new BatchBufferingService<String>(0, BATCH_TIMEOUT_IN_MILLIS, batch -> {}))
                 .isExactlyInstanceOf(IllegalArgumentException.class)
-                .hasMessage("Submitted chunk is larger than buffer capacity: 1");
+                .hasMessage("Batch capacity must be positive: 0");
+    }
+
+    private static void awaitUninterruptibly(final CountDownLatch latch) {
+        try {
+            latch.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void collect(final List<String> batch) {
+        dispatchedBatches.add(List.copyOf(batch));
     }
-}
\ No newline at end of file
+}
@@ -4,15 +4,20 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
-import reactor.core.publisher.Mono;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.UnicastProcessor;
 
+import java.time.Duration;
+import java.util.AbstractMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.verifyNoInteractions;
 
@@ -20,83 +25,219 @@ import static org.mockito.Mockito.verifyNoInteractions;
 public class BatchProcessorTest {
 
     private static final String QUERY = "query";
+    private static final String OTHER_QUERY = "other-query";
     private static final String VALUE = "value";
+    private static final Executor EXECUTOR = ForkJoinPool.commonPool();
 
     @Mock
     private DataProviderClient<String> dataProviderClient;
 
     @Test
-    public void shouldProcessNonNullItemsInBatch() throws Exception {
+    public void shouldCompleteEachComputationInBatch() throws Exception {
         // given
-        final var oneEmptyOneWithValue = newBatch();
-        final var emptySlot = oneEmptyOneWithValue.get(0);
-        final var slotWithValue = oneEmptyOneWithValue.get(1);
-        final var valueCalculation = new CompletableFuture<String>();
-        given(dataProviderClient.retrieveByHttp(argThat(queries -> queries.size() == 1 && queries.contains(QUERY))))
-                .willReturn(Mono.just(Map.of(QUERY, VALUE)));
+        final var computationWithValue = new QueryComputation<>(QUERY, new CompletableFuture<String>(), 10);
+        final var computationWithoutValue = new QueryComputation<>(OTHER_QUERY, new CompletableFuture<String>(), 10);
+        given(dataProviderClient.streamByHttp(eq(List.of(QUERY, OTHER_QUERY)), anyLong()))
+                .willReturn(Flux.just(entry(QUERY, VALUE)));
 
         // when
-        final CompletableFuture<Void> runningComputations = new BatchProcessor<>(dataProviderClient).process(oneEmptyOneWithValue);
-        emptySlot.complete(null);
-        slotWithValue.complete(new QueryComputation<>(QUERY, valueCalculation, 10));
+        final CompletableFuture<Void> runningComputations =
+                new BatchProcessor<>(dataProviderClient, EXECUTOR, EXECUTOR, ProviderMetrics.disabled())
+                        .process(List.of(computationWithValue, computationWithoutValue));
 
         // wait all chain is processed
         runningComputations.get(1, TimeUnit.SECONDS);
         assertThat(runningComputations).isCompleted();
-        assertThat(slotWithValue.get().getResponseCalculation().get()).isEqualTo(VALUE);
+        assertThat(computationWithValue.getResponseCalculation().get()).isEqualTo(VALUE);
+        assertThat(computationWithoutValue.getResponseCalculation().get()).isNull();
+    }
+
+    @Test
+    public void shouldCompleteComputationOnceItsValueReceived() throws Exception {
+        // given
+        final var computationReceived = new QueryComputation<>(QUERY, new CompletableFuture<String>(), 10);
+        final var computationPending = new QueryComputation<>(OTHER_QUERY, new CompletableFuture<String>(), 10);
+        // keeps entries until batch processor subscribes
+        final UnicastProcessor<Map.Entry<String, String>> response = UnicastProcessor.create();
+        given(dataProviderClient.streamByHttp(eq(List.of(QUERY, OTHER_QUERY)), anyLong())).willReturn(response);
+
+        // when
+        final CompletableFuture<Void> runningComputations =
+                new BatchProcessor<>(dataProviderClient, EXECUTOR, EXECUTOR, ProviderMetrics.disabled())
+                        .process(List.of(computationReceived, computationPending));
+        response.onNext(entry(QUERY, VALUE));
+
+        // then
+        assertThat(computationReceived.getResponseCalculation().get(1, TimeUnit.SECONDS)).isEqualTo(VALUE);
+        assertThat(computationPending.getResponseCalculation()).isNotDone();
+        // and once response is over
+        response.onComplete();
+        runningComputations.get(1, TimeUnit.SECONDS);
+        assertThat(computationPending.getResponseCalculation().get()).isNull();
+    }
+
+    @Test
+    public void shouldKeepReceivedValuesIfClientFailsInTheMiddle() throws Exception {
+        // given
+        final var computationReceived = new QueryComputation<>(QUERY, new CompletableFuture<String>(), 10);
+        final var computationLost = new QueryComputation<>(OTHER_QUERY, new CompletableFuture<String>(), 10);
+        given(dataProviderClient.streamByHttp(eq(List.of(QUERY, OTHER_QUERY)), anyLong()))
+                .willReturn(Flux.just(entry(QUERY, VALUE)).concatWith(Flux.error(IllegalStateException::new)));
+
+        // when
+        new BatchProcessor<>(dataProviderClient, EXECUTOR, EXECUTOR, ProviderMetrics.disabled())
+                .process(List.of(computationReceived, computationLost))
+                .get(1, TimeUnit.SECONDS);
+
+        // then
+        assertThat(computationReceived.getResponseCalculation().get()).isEqualTo(VALUE);
+        assertThat(computationLost.getResponseCalculation().get()).isNull();
     }
 
     @Test
     public void shouldReturnNullIfClientCompletesExceptionally() throws Exception {
         // given
-        final var oneWithValue = List.of(new CompletableFuture<QueryComputation<String>>());
-        final var slotWithValue = oneWithValue.get(0);
-        final var valueCalculation = new CompletableFuture<String>();
-        given(dataProviderClient.retrieveByHttp(argThat(queries -> queries.size() == 1 && queries.contains(QUERY))))
-                .willReturn(Mono.error(IllegalStateException::new));
+        final var computation = new QueryComputation<>(QUERY, new CompletableFuture<String>(), 10);
+        given(dataProviderClient.streamByHttp(argThat(queries -> queries.size() == 1 && queries.contains(QUERY)), anyLong()))
+                .willReturn(Flux.error(IllegalStateException::new));
 
         // when
-        final CompletableFuture<Void> runningComputations = new BatchProcessor<>(dataProviderClient).process(oneWithValue);
-        slotWithValue.complete(new QueryComputation<>(QUERY, valueCalculation, 10));
+        final CompletableFuture<Void> runningComputations =
+                new BatchProcessor<>(dataProviderClient, EXECUTOR, EXECUTOR, ProviderMetrics.disabled()).process(List.of(computation));
 
         // wait all chain is processed
         runningComputations.get(1, TimeUnit.SECONDS);
         assertThat(runningComputations).isCompleted();
-        assertThat(slotWithValue.get().getResponseCalculation().get()).isNull();
+        assertThat(computation.getResponseCalculation().get()).isNull();
     }
 
     @Test
     public void shouldReturnNullIfClientFailed() throws Exception {
         // given
-        final var oneWithValue = List.of(new CompletableFuture<QueryComputation<String>>());
-        final var slotWithValue = oneWithValue.get(0);
-        final var valueCalculation = new CompletableFuture<String>();
-        given(dataProviderClient.retrieveByHttp(argThat(queries -> queries.size() == 1 && queries.contains(QUERY))))
+        final var computation = new QueryComputation<>(QUERY, new CompletableFuture<String>(), 10);
+        given(dataProviderClient.streamByHttp(argThat(queries -> queries.size() == 1 && queries.contains(QUERY)), anyLong()))
                 .willThrow(new IllegalStateException());
 
         // when
-        final CompletableFuture<Void> runningComputations = new BatchProcessor<>(dataProviderClient).process(oneWithValue);
-        slotWithValue.complete(new QueryComputation<>(QUERY, valueCalculation, 10));
+        final CompletableFuture<Void> runningComputations =
+                new BatchProcessor<>(dataProviderClient, EXECUTOR, EXECUTOR, ProviderMetrics.disabled()).process(List.of(computation));
 
         // wait all chain is processed
         runningComputations.get(1, TimeUnit.SECONDS);
         assertThat(runningComputations).isCompleted();
-        assertThat(slotWithValue.get().getResponseCalculation().get()).isNull();
+        assertThat(computation.getResponseCalculation().get()).isNull();
+    }
+
+    @Test
+    public void shouldCompleteComputationsOnResponseFanOutExecutor() throws Exception {
+        // given
+        final var computation = new QueryComputation<>(QUERY, new CompletableFuture<String>(), 10);
+        given(dataProviderClient.streamByHttp(eq(List.of(QUERY)), anyLong())).willReturn(Flux.just(entry(QUERY, VALUE)));
+        final ExecutorService responseFanOutExecutor =
+                Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "response-fan-out"));
+        final CompletableFuture<String> completingThread =
+                computation.getResponseCalculation().thenApply(value -> Thread.currentThread().getName());
+
+        // when
+        new BatchProcessor<>(dataProviderClient, EXECUTOR, responseFanOutExecutor, ProviderMetrics.disabled())
+                .process(List.of(computation))
+                .get(1, TimeUnit.SECONDS);
+
+        // then
+        assertThat(completingThread.get()).isEqualTo("response-fan-out");
+        responseFanOutExecutor.shutdown();
+    }
+
+    @Test
+    public void shouldCompleteEachComputationInBatchReactively() {
+        // given
+        final var computationWithValue = new QueryComputation<>(QUERY, new CompletableFuture<String>(), 10);
+        final var computationWithoutValue = new QueryComputation<>(OTHER_QUERY, new CompletableFuture<String>(), 10);
+        given(dataProviderClient.streamByHttp(eq(List.of(QUERY, OTHER_QUERY)), anyLong()))
+                .willReturn(Flux.just(entry(QUERY, VALUE)));
+
+        // when
+        new BatchProcessor<>(dataProviderClient, EXECUTOR, EXECUTOR, ProviderMetrics.disabled())
+                .processReactive(List.of(computationWithValue, computationWithoutValue))
+                .block(Duration.ofSeconds(1));
+
+        // then
+        assertThat(computationWithValue.getResponseCalculation().getNow(null)).isEqualTo(VALUE);
+        assertThat(computationWithoutValue.getResponseCalculation()).isCompleted();
+        assertThat(computationWithoutValue.getResponseCalculation().getNow(VALUE)).isNull();
+    }
+
+    @Test
+    public void shouldReturnNullReactivelyIfClientFailed() {
+        // given
+        final var computation = new QueryComputation<>(QUERY, new CompletableFuture<String>(), 10);
+        given(dataProviderClient.streamByHttp(argThat(queries -> queries.size() == 1 && queries.contains(QUERY)), anyLong()))
+                .willThrow(new IllegalStateException());
+
+        // when
+        new BatchProcessor<>(dataProviderClient, EXECUTOR, EXECUTOR, ProviderMetrics.disabled())
+                .processReactive(List.of(computation))
+                .block(Duration.ofSeconds(1));
+
+        // then
+        assertThat(computation.getResponseCalculation()).isCompleted();
+        assertThat(computation.getResponseCalculation().getNow(VALUE)).isNull();
+    }
+
+    @Test
+    public void shouldReturnNullIfBatchPreparationRejected() throws Exception {
+        // given
+        final var computation = new QueryComputation<>(QUERY, new CompletableFuture<String>(), 10);
+        final Executor rejecting = task -> {
+            throw new RejectedExecutionException();
+        };
+
+        // when
+        final CompletableFuture<Void> runningComputations =
+                new BatchProcessor<>(dataProviderClient, rejecting, EXECUTOR, ProviderMetrics.disabled())
+                        .process(List.of(computation));
+
+        // then
+        runningComputations.get(1, TimeUnit.SECONDS);
+        assertThat(computation.getResponseCalculation().get(1, TimeUnit.SECONDS)).isNull();
+        verifyNoInteractions(dataProviderClient);
+    }
+
+    @Test
+    public void shouldReturnNullIfSendingBatchRejected() throws Exception {
+        // given
+        final var computation = new QueryComputation<>(QUERY, new CompletableFuture<String>(), 10);
+        // accepts collecting queries, rejects sending them
+        final AtomicInteger accepted = new AtomicInteger();
+        final Executor rejectingSecond = task -> {
+            if (accepted.getAndIncrement() > 0) {
+                throw new RejectedExecutionException();
+            }
+            task.run();
+        };
+
+        // when
+        final CompletableFuture<Void> runningComputations =
+                new BatchProcessor<>(dataProviderClient, rejectingSecond, EXECUTOR, ProviderMetrics.disabled())
+                        .process(List.of(computation));
+
+        // then
+        runningComputations.get(1, TimeUnit.SECONDS);
+        assertThat(runningComputations).isCompleted();
+        assertThat(computation.getResponseCalculation().get(1, TimeUnit.SECONDS)).isNull();
+        verifyNoInteractions(dataProviderClient);
     }
 
     @Test
     public void shouldNotProcessIfBatchIsEmpty() throws Exception {
-        final var result = new BatchProcessor<>(dataProviderClient).process(List.of());
+        final var result = new BatchProcessor<>(dataProviderClient, EXECUTOR, EXECUTOR, ProviderMetrics.disabled()).process(List.of());
 
         result.get(1, TimeUnit.SECONDS);
         assertThat(result).isCompleted();
         verifyNoInteractions(dataProviderClient);
     }
 
-    private List<CompletableFuture<QueryComputation<String>>> newBatch() {
-        return List.of(
-                new CompletableFuture<>(),
-                new CompletableFuture<>()
-        );
+    private static Map.Entry<String, String> entry(final String key, final String value) {
+        return new AbstractMap.SimpleImmutableEntry<>(key, value);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,151 @@
+package com.madkroll.aggregation.services;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BatchSizingTest {
+
+    private static final int CAPACITY = 5;
+    private static final int MAX_CAPACITY = 50;
+    private static final long TIMEOUT_IN_MILLIS = 5000;
+    // batch not expected to fill up lingers 50 millis
+    private static final int MAX_BATCHES_PER_SECOND = 20;
+
+    private final BatchSizing adaptive =
+            BatchSizing.adaptive(CAPACITY, MAX_CAPACITY, TIMEOUT_IN_MILLIS, MAX_BATCHES_PER_SECOND);
+
+    @Test
+    public void shouldKeepConfiguredCapacityAndTimeoutIfFixed() {
+        // given
+        final BatchSizing fixed = BatchSizing.fixed(CAPACITY, TIMEOUT_IN_MILLIS);
+
+        // when
+        fixed.recordBatch(CAPACITY, System.nanoTime());
+        fixed.recordBatch(CAPACITY, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1));
+
+        // then
+        assertThat(fixed.capacity()).isEqualTo(CAPACITY);
+        assertThat(fixed.lingerInMillis(CAPACITY)).isEqualTo(TIMEOUT_IN_MILLIS);
+    }
+
+    @Test
+    public void shouldLingerForMinimalIntervalIfBatchIsNotExpectedToFillUp() {
+        // when one item per second arrives
+        recordBatches(1, TimeUnit.SECONDS.toNanos(1));
+
+        // then
+        assertThat(adaptive.capacity()).isEqualTo(CAPACITY);
+        assertThat(adaptive.lingerInMillis(CAPACITY)).isEqualTo(50);
+    }
+
+    @Test
+    public void shouldLingerUpToTimeoutIfBatchIsExpectedToFillUp() {
+        // when one item per 100 millis arrives, batch fills up in half a second
+        recordBatches(1, TimeUnit.MILLISECONDS.toNanos(100));
+
+        // then
+        assertThat(adaptive.capacity()).isEqualTo(CAPACITY);
+        assertThat(adaptive.lingerInMillis(CAPACITY)).isEqualTo(TIMEOUT_IN_MILLIS);
+    }
+
+    @Test
+    public void shouldGrowCapacityToKeepBatchesPerSecondBounded() {
+        // when 500 items per second arrive, 25 per minimal interval
+        recordBatches(CAPACITY, TimeUnit.MILLISECONDS.toNanos(10));
+
+        // then
+        assertThat(adaptive.capacity()).isEqualTo(25);
+    }
+
+    @Test
+    public void shouldNotGrowCapacityBeyondMax() {
+        // when batches fill up at once
+        recordBatches(MAX_CAPACITY, 0);
+
+        // then
+        assertThat(adaptive.capacity()).isEqualTo(MAX_CAPACITY);
+    }
+
+    @Test
+    public void shouldNotLingerUpToTimeoutIfTrafficIsSparse() {
+        // when one item per 10 seconds arrives, far less than batch capacity within timeout
+        final int lingeredUpToTimeout = runBatches(10_000, 100);
+
+        // then
+        assertThat(lingeredUpToTimeout).isZero();
+        assertThat(adaptive.capacity()).isEqualTo(CAPACITY);
+        assertThat(adaptive.lingerInMillis(CAPACITY)).isEqualTo(50);
+    }
+
+    @Test
+    public void shouldLingerUpToTimeoutOnceTrafficFillsUpBatchWithinIt() {
+        // when one item per 500 millis arrives, batch fills up in 2 seconds
+        final int lingeredUpToTimeout = runBatches(500, 100);
+
+        // then
+        assertThat(lingeredUpToTimeout).isZero();
+        assertThat(adaptive.capacity()).isEqualTo(CAPACITY);
+        assertThat(adaptive.lingerInMillis(CAPACITY)).isEqualTo(TIMEOUT_IN_MILLIS);
+    }
+
+    @Test
+    public void shouldGrowCapacityOnceTrafficIsDense() {
+        // when one item per millisecond arrives, 50 per minimal interval
+        final int lingeredUpToTimeout = runBatches(1, 100);
+
+        // then
+        assertThat(lingeredUpToTimeout).isZero();
+        assertThat(adaptive.capacity()).isEqualTo(MAX_CAPACITY);
+        assertThat(adaptive.lingerInMillis(MAX_CAPACITY)).isEqualTo(TIMEOUT_IN_MILLIS);
+    }
+
+    @Test
+    public void shouldFailIfMaxCapacityIsLessThanCapacity() {
+        assertThatThrownBy(() -> BatchSizing.adaptive(CAPACITY, CAPACITY - 1, TIMEOUT_IN_MILLIS, MAX_BATCHES_PER_SECOND))
+                .isExactlyInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Batch max capacity must not be less than capacity: 4");
+    }
+
+    private void recordBatches(final int size, final long intervalNanos) {
+        // smoothed rate converges to the observed one
+        long sealedAtNanos = System.nanoTime();
+        for (int batch = 0; batch <= 100; batch++) {
+            adaptive.recordBatch(size, sealedAtNanos);
+            sealedAtNanos += intervalNanos;
+        }
+    }
+
+    /**
+     * Runs batches over items arriving at regular interval, every batch sized and sealed as decided by sizing.
+     *
+     * @return number of batches lingered up to timeout without filling up
+     */
+    private int runBatches(final long arrivalIntervalInMillis, final int batches) {
+        final long startedAtNanos = System.nanoTime();
+        // arrival of the first item of the next batch, since start
+        long arrivalInMillis = 0;
+        int lingeredUpToTimeout = 0;
+        for (int batch = 0; batch < batches; batch++) {
+            final int capacity = adaptive.capacity();
+            final long lingerInMillis = adaptive.lingerInMillis(capacity);
+            final int size = (int) Math.min(capacity, 1 + lingerInMillis / arrivalIntervalInMillis);
+
+            final long sealedAtInMillis;
+            if (size == capacity) {
+                sealedAtInMillis = arrivalInMillis + (size - 1) * arrivalIntervalInMillis;
+            } else {
+                sealedAtInMillis = arrivalInMillis + lingerInMillis;
+                lingeredUpToTimeout += lingerInMillis == TIMEOUT_IN_MILLIS ? 1 : 0;
+            }
+
+            adaptive.recordBatch(size, startedAtNanos + TimeUnit.MILLISECONDS.toNanos(sealedAtInMillis));
+            arrivalInMillis += size * arrivalIntervalInMillis;
+        }
+
+        return lingeredUpToTimeout;
+    }
+}
@@ -0,0 +1,39 @@
+package com.madkroll.aggregation.services;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BigDecimalValueDecoderTest {
+
+    private final BigDecimalValueDecoder decoder = new BigDecimalValueDecoder();
+
+    @Test
+    public void shouldDecodeNumberWithoutLosingPrecision() throws Exception {
+        assertThat(decode("14.242090605778123456789")).isEqualTo(new BigDecimal("14.242090605778123456789"));
+        assertThat(decode("7")).isEqualTo(new BigDecimal("7"));
+    }
+
+    @Test
+    public void shouldDecodeNull() throws Exception {
+        assertThat(decode("null")).isNull();
+    }
+
+    @Test
+    public void shouldFailIfNotNumber() {
+        assertThatThrownBy(() -> decode("\"14.24\"")).isInstanceOf(JsonParseException.class);
+    }
+
+    private BigDecimal decode(final String json) throws IOException {
+        final JsonParser parser = new JsonFactory().createParser(json);
+        parser.nextToken();
+        return decoder.decode(parser);
+    }
+}
@@ -0,0 +1,176 @@
+package com.madkroll.aggregation.services;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CircuitBreakerTest {
+
+    private static final long SLOW_CALL_IN_MILLIS = 1_000;
+    private static final long OPEN_IN_MILLIS = 100;
+    private static final long FAST_CALL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final CircuitBreaker circuitBreaker =
+            CircuitBreaker.of("track", 4, 0.5, 0.5, SLOW_CALL_IN_MILLIS, OPEN_IN_MILLIS, 1);
+
+    @Test
+    public void shouldStayClosedWhileFailureRateIsBelowThreshold() {
+        // when
+        recordCall(BackendOutcome.FAILURE, FAST_CALL_NANOS);
+        recordCall(BackendOutcome.SUCCESS, FAST_CALL_NANOS);
+        recordCall(BackendOutcome.SUCCESS, FAST_CALL_NANOS);
+        recordCall(BackendOutcome.SUCCESS, FAST_CALL_NANOS);
+        recordCall(BackendOutcome.FAILURE, FAST_CALL_NANOS);
+
+        // then
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(circuitBreaker.tryAcquirePermission()).isNotNegative();
+    }
+
+    @Test
+    public void shouldOpenOnceFailureRateReachedThreshold() {
+        // when
+        open();
+
+        // then
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(circuitBreaker.tryAcquirePermission()).isEqualTo(CircuitBreaker.NOT_PERMITTED);
+    }
+
+    @Test
+    public void shouldOpenOnceSlowCallRateReachedThreshold() {
+        // when
+        recordCall(BackendOutcome.SUCCESS, TimeUnit.MILLISECONDS.toNanos(SLOW_CALL_IN_MILLIS));
+        // cancelled once backend timeout passed
+        recordCall(BackendOutcome.CANCELLED, TimeUnit.SECONDS.toNanos(SLOW_CALL_IN_MILLIS));
+        recordCall(BackendOutcome.SUCCESS, FAST_CALL_NANOS);
+        recordCall(BackendOutcome.SUCCESS, FAST_CALL_NANOS);
+
+        // then
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    public void shouldNotCountFastCallCancelledByHedgeAsSlow() {
+        // when
+        recordCall(BackendOutcome.CANCELLED, FAST_CALL_NANOS);
+        recordCall(BackendOutcome.CANCELLED, FAST_CALL_NANOS);
+        recordCall(BackendOutcome.SUCCESS, FAST_CALL_NANOS);
+        recordCall(BackendOutcome.SUCCESS, FAST_CALL_NANOS);
+
+        // then
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void shouldLetProbeThroughOnceOpenDurationPassed() throws Exception {
+        // given
+        open();
+
+        // when
+        TimeUnit.MILLISECONDS.sleep(OPEN_IN_MILLIS * 2);
+
+        // then
+        assertThat(circuitBreaker.tryAcquirePermission()).isNotNegative();
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(circuitBreaker.tryAcquirePermission()).isEqualTo(CircuitBreaker.NOT_PERMITTED);
+    }
+
+    @Test
+    public void shouldCloseOnceProbeSucceeded() throws Exception {
+        // given
+        open();
+        TimeUnit.MILLISECONDS.sleep(OPEN_IN_MILLIS * 2);
+        final long probe = circuitBreaker.tryAcquirePermission();
+
+        // when
+        circuitBreaker.recordCall(BackendOutcome.SUCCESS, FAST_CALL_NANOS, probe);
+
+        // then
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(circuitBreaker.tryAcquirePermission()).isNotNegative();
+    }
+
+    @Test
+    public void shouldOpenAgainOnceProbeFailed() throws Exception {
+        // given
+        open();
+        TimeUnit.MILLISECONDS.sleep(OPEN_IN_MILLIS * 2);
+        final long probe = circuitBreaker.tryAcquirePermission();
+
+        // when
+        circuitBreaker.recordCall(BackendOutcome.FAILURE, FAST_CALL_NANOS, probe);
+
+        // then
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(circuitBreaker.tryAcquirePermission()).isEqualTo(CircuitBreaker.NOT_PERMITTED);
+    }
+
+    @Test
+    public void shouldIgnoreOutcomeOfCallAdmittedBeforeOpening() throws Exception {
+        // given
+        final long admittedBeforeOpening = circuitBreaker.tryAcquirePermission();
+        open();
+        TimeUnit.MILLISECONDS.sleep(OPEN_IN_MILLIS * 2);
+        final long probe = circuitBreaker.tryAcquirePermission();
+
+        // when
+        circuitBreaker.recordCall(BackendOutcome.SUCCESS, FAST_CALL_NANOS, admittedBeforeOpening);
+
+        // then
+        assertThat(probe).isGreaterThan(admittedBeforeOpening);
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        // and once probe succeeded
+        circuitBreaker.recordCall(BackendOutcome.SUCCESS, FAST_CALL_NANOS, probe);
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void shouldLetProbeThroughAgainOnceGivenBack() throws Exception {
+        // given
+        open();
+        TimeUnit.MILLISECONDS.sleep(OPEN_IN_MILLIS * 2);
+        final long probe = circuitBreaker.tryAcquirePermission();
+
+        // when
+        circuitBreaker.releasePermission(probe);
+
+        // then
+        assertThat(circuitBreaker.tryAcquirePermission()).isEqualTo(probe);
+        assertThat(circuitBreaker.tryAcquirePermission()).isEqualTo(CircuitBreaker.NOT_PERMITTED);
+    }
+
+    @Test
+    public void shouldAlwaysPermitIfDisabled() {
+        // given
+        final CircuitBreaker disabled = CircuitBreaker.disabled();
+
+        // when
+        disabled.recordCall(BackendOutcome.FAILURE, FAST_CALL_NANOS, disabled.getGeneration());
+
+        // then
+        assertThat(disabled.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(disabled.tryAcquirePermission()).isNotNegative();
+    }
+
+    @Test
+    public void shouldFailIfWindowSizeIsNotPositive() {
+        assertThatThrownBy(() -> CircuitBreaker.of("track", 0, 0.5, 0.5, SLOW_CALL_IN_MILLIS, OPEN_IN_MILLIS, 1))
+                .isExactlyInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Circuit breaker window size must be positive: 0");
+    }
+
+    private void open() {
+        recordCall(BackendOutcome.SUCCESS, FAST_CALL_NANOS);
+        recordCall(BackendOutcome.FAILURE, FAST_CALL_NANOS);
+        recordCall(BackendOutcome.SUCCESS, FAST_CALL_NANOS);
+        recordCall(BackendOutcome.MALFORMED, FAST_CALL_NANOS);
+    }
+
+    private void recordCall(final BackendOutcome outcome, final long elapsedNanos) {
+        circuitBreaker.recordCall(outcome, elapsedNanos, circuitBreaker.getGeneration());
+    }
+}
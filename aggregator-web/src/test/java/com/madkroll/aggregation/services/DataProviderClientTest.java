@@ -1,37 +1,39 @@
 package com.madkroll.aggregation.services;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
-import org.junit.runner.RunWith;
-import org.mockito.Mock;
-import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Hooks;
+import reactor.test.StepVerifier;
 
+import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
-import static org.mockito.ArgumentMatchers.*;
-import static org.mockito.BDDMockito.given;
-import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.verifyNoInteractions;
+import static org.assertj.core.api.Assertions.entry;
 
-@RunWith(MockitoJUnitRunner.class)
 public class DataProviderClientTest {
 
     private static final int BACKEND_TIMEOUT = 2;
     private static final int MAX_RETRIES = 1;
+    private static final Duration RETRY_BACKOFF = Duration.ofMillis(10);
 
     private static final Map<String, String> MAP_WITH_VALUES =
             Map.of(
@@ -41,41 +43,193 @@ public class DataProviderClientTest {
 
     private static final Set<String> QUERIES = MAP_WITH_VALUES.keySet();
 
-    private MockWebServer mockWebServer;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // opens once both of the latest two backend calls failed
+    private final CircuitBreaker circuitBreaker = CircuitBreaker.of("pricing", 2, 1, 1, 5_000, 10_000, 1);
 
-    @Mock
-    private ObjectMapper objectMapper;
+    // errors no subscriber is left to receive, e.g. failed release of already released chunk
+    private final List<Throwable> droppedErrors = new CopyOnWriteArrayList<>();
+
+    private MockWebServer mockWebServer;
 
     @Before
     public void setup() {
         mockWebServer = new MockWebServer();
+        Hooks.onErrorDropped(droppedErrors::add);
     }
 
     @After
     public void tearDown() throws Exception {
+        Hooks.resetOnErrorDropped();
         mockWebServer.shutdown();
     }
 
     @Test
-    public void shouldReturnResponseIfRetrySucceeded() throws Exception {
+    public void shouldReturnResponseIfRetrySucceeded() {
         // given
-        given(objectMapper.readValue(anyString(), any(TypeReference.class))).willReturn(MAP_WITH_VALUES);
         // once returns 503
         mockWebServer.enqueue(new MockResponse().setResponseCode(HttpStatus.SERVICE_UNAVAILABLE.value()));
         // and then succeeds to request data, 200
+        mockWebServer.enqueue(okResponse().setBody(toJson(MAP_WITH_VALUES)));
+
+        // when
+        final Map<String, String> response = retrieve(new StringValueDecoder());
+
+        // then
+        assertThat(response).containsExactlyInAnyOrderEntriesOf(MAP_WITH_VALUES);
+        assertThat(meterRegistry.get("aggregation.backend.retries").counter().count()).isEqualTo(1);
+        assertThat(backendCalls("failure")).isEqualTo(1);
+        assertThat(backendCalls("success")).isEqualTo(1);
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void shouldTakeResponseOfHedgingCallIfItRespondsFirst() {
+        // given
+        final HedgingPolicy hedgingPolicy = HedgingPolicy.of(0.5, 10, 1, 1, 10);
+        hedgingPolicy.recordLatency(TimeUnit.MILLISECONDS.toNanos(50));
+        // first call responds too late
         mockWebServer.enqueue(
-                new MockResponse()
-                        .setResponseCode(HttpStatus.OK.value())
-                        .setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                        .setBody(toJson(MAP_WITH_VALUES))
+                okResponse().setBody(toJson(Map.of("1", "late"))).setHeadersDelay(BACKEND_TIMEOUT, TimeUnit.SECONDS)
+        );
+        // and hedging one right away
+        mockWebServer.enqueue(okResponse().setBody(toJson(MAP_WITH_VALUES)));
+
+        // when
+        final Map<String, String> response = newClient(new StringValueDecoder(), hedgingPolicy)
+                .streamByHttp(QUERIES, 0)
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                .block();
+
+        // then
+        assertThat(response).containsExactlyInAnyOrderEntriesOf(MAP_WITH_VALUES);
+        assertThat(meterRegistry.get("aggregation.backend.hedges").counter().count()).isEqualTo(1);
+        assertThat(backendCalls("success")).isEqualTo(1);
+        assertThat(backendCalls("cancelled")).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldTakeResponseOfFirstCallIfHedgingCallFails() {
+        // given
+        final HedgingPolicy hedgingPolicy = HedgingPolicy.of(0.5, 10, 1, 1, 10);
+        hedgingPolicy.recordLatency(TimeUnit.MILLISECONDS.toNanos(50));
+        // first call responds after hedging delay
+        mockWebServer.enqueue(
+                okResponse().setBody(toJson(MAP_WITH_VALUES)).setHeadersDelay(500, TimeUnit.MILLISECONDS)
         );
+        // and hedging one fails right away
+        mockWebServer.enqueue(new MockResponse().setResponseCode(HttpStatus.SERVICE_UNAVAILABLE.value()));
 
         // when
-        final Map<String, String> response = newClient().retrieveByHttp(QUERIES).block();
+        final Map<String, String> response = newClient(new StringValueDecoder(), hedgingPolicy)
+                .streamByHttp(QUERIES, 0)
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                .block();
 
         // then
         assertThat(response).containsExactlyInAnyOrderEntriesOf(MAP_WITH_VALUES);
-        verify(objectMapper).readValue(anyString(), any(TypeReference.class));
+        assertThat(mockWebServer.getRequestCount()).isEqualTo(2);
+        assertThat(backendCalls("success")).isEqualTo(1);
+        assertThat(backendCalls("failure")).isEqualTo(1);
+        assertThat(meterRegistry.get("aggregation.backend.retries").counter().count()).isZero();
+    }
+
+    @Test
+    public void shouldFailOnceBothFirstAndHedgingCallsFail() {
+        // given
+        final HedgingPolicy hedgingPolicy = HedgingPolicy.of(0.5, 10, 1, 1, 10);
+        hedgingPolicy.recordLatency(TimeUnit.MILLISECONDS.toNanos(50));
+        final DataProviderClient<String> client = new DataProviderClient<>(
+                BACKEND_TIMEOUT,
+                0,
+                RETRY_BACKOFF,
+                WebClient.builder().baseUrl(mockWebServer.url("/").toString()).build(),
+                objectMapper,
+                new StringValueDecoder(),
+                hedgingPolicy,
+                circuitBreaker,
+                new ProviderMetrics(meterRegistry, "pricing")
+        );
+        // first call fails after hedging delay
+        mockWebServer.enqueue(
+                new MockResponse()
+                        .setResponseCode(HttpStatus.SERVICE_UNAVAILABLE.value())
+                        .setHeadersDelay(300, TimeUnit.MILLISECONDS)
+        );
+        // and hedging one right away
+        mockWebServer.enqueue(new MockResponse().setResponseCode(HttpStatus.SERVICE_UNAVAILABLE.value()));
+
+        // when, then
+        StepVerifier.create(client.streamByHttp(QUERIES, 0))
+                .expectError()
+                .verify(Duration.ofSeconds(BACKEND_TIMEOUT));
+        assertThat(backendCalls("failure")).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldDecodeEntriesSplitAcrossChunks() {
+        // given
+        final String body = "{\"1\": [\"box\", \"pallet\", \"box\", \"crate\", \"pallet\"], \"2\": [], \"3\": null}";
+        mockWebServer.enqueue(okResponse().setChunkedBody(body, 3));
+
+        // when
+        final Map<String, List<String>> response = retrieve(new StringListValueDecoder());
+
+        // then
+        final Map<String, List<String>> expected = new HashMap<>();
+        expected.put("1", List.of("box", "pallet", "box", "crate", "pallet"));
+        expected.put("2", List.of());
+        expected.put("3", null);
+        assertThat(response).isEqualTo(expected);
+    }
+
+    @Test
+    public void shouldDecodePricesWithoutLosingPrecision() {
+        // given
+        mockWebServer.enqueue(okResponse().setChunkedBody("{\"NL\": 14.242090605778, \"CN\": 7}", 4));
+
+        // when
+        final Map<String, BigDecimal> response = retrieve(new BigDecimalValueDecoder());
+
+        // then
+        assertThat(response).containsOnly(
+                entry("NL", new BigDecimal("14.242090605778")),
+                entry("CN", new BigDecimal("7"))
+        );
+    }
+
+    @Test
+    public void shouldFailIfValueHasUnexpectedType() {
+        // given
+        mockWebServer.enqueue(okResponse().setBody("{\"NL\": \"not-a-number\"}"));
+
+        // when, then
+        assertThatThrownBy(() -> retrieve(new BigDecimalValueDecoder()))
+                .isExactlyInstanceOf(MalformedResponseException.class)
+                .hasMessage("Unable to parse response. Response is malformed.")
+                .hasCauseInstanceOf(JsonProcessingException.class);
+    }
+
+    @Test
+    public void shouldEmitEntryBeforeWholeBodyArrived() {
+        // given
+        mockWebServer.enqueue(
+                okResponse()
+                        .setBody("{\"first_entry_key\": \"first_entry_value\", \"second_entry_key\": \"second_entry_value\"}")
+                        // second entry arrives only after first one is parsed
+                        .throttleBody(42, 500, TimeUnit.MILLISECONDS)
+        );
+
+        // when, then
+        StepVerifier.create(newClient(new StringValueDecoder()).streamByHttp(QUERIES, 0))
+                .assertNext(entry -> assertThat(entry.getKey()).isEqualTo("first_entry_key"))
+                .expectNoEvent(Duration.ofMillis(200))
+                .assertNext(entry -> assertThat(entry.getKey()).isEqualTo("second_entry_key"))
+                .expectComplete()
+                .verify(Duration.ofSeconds(BACKEND_TIMEOUT));
     }
 
     @Test
@@ -86,41 +240,78 @@ public class DataProviderClientTest {
         mockWebServer.enqueue(new MockResponse().setResponseCode(HttpStatus.SERVICE_UNAVAILABLE.value()));
 
         // when, then
-        assertThatThrownBy(() -> newClient().retrieveByHttp(QUERIES).block())
+        assertThatThrownBy(() -> retrieve(new StringValueDecoder()))
                 .hasMessage("Retries exhausted: 1/1");
-        verifyNoInteractions(objectMapper);
+        assertThat(backendCalls("failure")).isEqualTo(2);
+        assertThat(backendCalls("cancelled")).isZero();
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
     }
 
     @Test
-    public void shouldFailIfMalformedResponse() throws JsonProcessingException {
+    public void shouldFailIfMalformedResponse() {
         // given
-        given(objectMapper.readValue(eq("nonsense-content"), any(TypeReference.class)))
-                .willThrow(JsonProcessingException.class);
+        mockWebServer.enqueue(okResponse().setBody("nonsense-content"));
 
-        mockWebServer.enqueue(
-                new MockResponse()
-                        .setResponseCode(HttpStatus.OK.value())
-                        .setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                        .setBody("nonsense-content")
-        );
+        // when, then
+        assertThatThrownBy(() -> retrieve(new StringValueDecoder()))
+                .isExactlyInstanceOf(MalformedResponseException.class)
+                .hasMessage("Unable to parse response. Response is malformed.")
+                .hasCauseInstanceOf(JsonProcessingException.class);
+        // malformed response is not retried
+        assertThat(mockWebServer.getRequestCount()).isEqualTo(1);
+        assertThat(meterRegistry.get("aggregation.backend.parse.failures").counter().count()).isEqualTo(1);
+        assertThat(backendCalls("malformed")).isEqualTo(1);
+        // chunk failed to parse is released once
+        assertThat(droppedErrors).isEmpty();
+    }
+
+    @Test
+    public void shouldFailIfResponseIsIncomplete() {
+        // given
+        mockWebServer.enqueue(okResponse().setBody("{\"first_entry_key\": \"first_entry_value\""));
 
         // when, then
-        assertThatThrownBy(() -> newClient().retrieveByHttp(QUERIES).block())
-                .isExactlyInstanceOf(IllegalStateException.class)
+        assertThatThrownBy(() -> retrieve(new StringValueDecoder()))
+                .isExactlyInstanceOf(MalformedResponseException.class)
                 .hasMessage("Unable to parse response. Response is malformed.")
                 .hasCauseInstanceOf(JsonProcessingException.class);
-        verify(objectMapper).readValue(eq("nonsense-content"), any(TypeReference.class));
+        assertThat(droppedErrors).isEmpty();
     }
 
-    private DataProviderClient<String> newClient() {
+    private <V> Map<String, V> retrieve(final ValueDecoder<V> valueDecoder) {
+        return newClient(valueDecoder).streamByHttp(QUERIES, 0)
+                .collect(HashMap<String, V>::new, (response, entry) -> response.put(entry.getKey(), entry.getValue()))
+                .block();
+    }
+
+    private <V> DataProviderClient<V> newClient(final ValueDecoder<V> valueDecoder) {
+        return newClient(valueDecoder, HedgingPolicy.disabled());
+    }
+
+    private <V> DataProviderClient<V> newClient(final ValueDecoder<V> valueDecoder, final HedgingPolicy hedgingPolicy) {
         return new DataProviderClient<>(
                 BACKEND_TIMEOUT,
                 MAX_RETRIES,
+                RETRY_BACKOFF,
                 WebClient.builder().baseUrl(mockWebServer.url("/").toString()).build(),
-                objectMapper
+                objectMapper,
+                valueDecoder,
+                hedgingPolicy,
+                circuitBreaker,
+                new ProviderMetrics(meterRegistry, "pricing")
         );
     }
 
+    private long backendCalls(final String outcome) {
+        return meterRegistry.get("aggregation.backend.latency").tag("outcome", outcome).timer().count();
+    }
+
+    private static MockResponse okResponse() {
+        return new MockResponse()
+                .setResponseCode(HttpStatus.OK.value())
+                .setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+    }
+
     private static String toJson(final Object object) {
         try {
             return new ObjectMapper().writeValueAsString(object);
@@ -128,4 +319,4 @@ public class DataProviderClientTest {
             throw new IllegalStateException("Failed to serialize to JSON");
         }
     }
-}
\ No newline at end of file
+}
@@ -1,38 +1,44 @@
 package com.madkroll.aggregation.services;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.ArgumentMatchers.anyList;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.willThrow;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 
 @RunWith(MockitoJUnitRunner.class)
 public class DataProviderTest {
 
     private static final String QUERY = "1";
+    private static final String OTHER_QUERY = "2";
     private static final Set<String> QUERIES = Set.of("1", "2", "3");
 
-    private static final int BATCH_CAPACITY = 2;
     private static final int COMPUTATION_TIMEOUT_IN_SECONDS = 1;
 
     @Mock
-    private BatchBufferingService<QueryComputation<String>> batchBufferingService;
-
-    @Mock
-    private BatchProcessor<String> batchProcessor;
+    private BatchingService<QueryComputation<String>> batchingService;
 
     @Test
     public void shouldReturnNoComputationsIfNothingQueried() {
         assertThat(
-                new DataProvider<>(BATCH_CAPACITY, COMPUTATION_TIMEOUT_IN_SECONDS, batchBufferingService, batchProcessor)
+                newDataProvider(ResponseCache.disabled())
                         .fetch(Set.of())
         ).isEmpty();
     }
@@ -40,30 +46,133 @@ public class DataProviderTest {
     @Test
     public void shouldCompleteWithNullValueIfTimeoutReached() throws Exception {
         final List<QueryComputation<String>> computations =
-                new DataProvider<>(BATCH_CAPACITY, COMPUTATION_TIMEOUT_IN_SECONDS, batchBufferingService, batchProcessor)
+                newDataProvider(ResponseCache.disabled())
                         .fetch(Set.of(QUERY));
 
         assertThat(computations).hasSize(1);
         assertThat(
                 computations.get(0)
                         .getResponseCalculation()
-                        .get(COMPUTATION_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)
+                        // give timer some margin, it's scheduled right before awaiting starts
+                        .get(COMPUTATION_TIMEOUT_IN_SECONDS * 2, TimeUnit.SECONDS)
         ).isNull();
     }
 
     @Test
-    public void shouldSpitInTwoChunks() throws Exception {
-        new DataProvider<>(BATCH_CAPACITY, COMPUTATION_TIMEOUT_IN_SECONDS, batchBufferingService, batchProcessor)
-                .fetch(QUERIES);
-        Thread.sleep(1000);
-        verify(batchBufferingService, times(2)).prepareBatch(anyList());
-        verify(batchProcessor, times(2)).process(anyList());
+    public void shouldCountComputationsCompletedWithNullValueOnTimeout() throws Exception {
+        // given
+        final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final DataProvider<String> dataProvider = new DataProvider<>(
+                COMPUTATION_TIMEOUT_IN_SECONDS,
+                batchingService,
+                ResponseCache.disabled(),
+                new ProviderMetrics(meterRegistry, "track")
+        );
+
+        // when
+        final List<QueryComputation<String>> computations = dataProvider.fetch(Set.of(QUERY, OTHER_QUERY));
+        computations.get(0).getResponseCalculation().complete("value");
+        computations.get(1).getResponseHandling().get(COMPUTATION_TIMEOUT_IN_SECONDS * 2, TimeUnit.SECONDS);
+
+        // then
+        assertThat(meterRegistry.get("aggregation.computations").tag("outcome", "value").counter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("aggregation.computations").tag("outcome", "timeout").counter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("aggregation.computations.in.flight").gauge().value()).isZero();
+    }
+
+    @Test
+    public void shouldSubmitEachComputationForBatching() {
+        final List<QueryComputation<String>> computations =
+                newDataProvider(ResponseCache.disabled())
+                        .fetch(QUERIES);
+
+        assertThat(computations).hasSize(QUERIES.size());
+        computations.forEach(computation -> verify(batchingService).submit(computation));
+        verifyNoMoreInteractions(batchingService);
+    }
+
+    @Test
+    public void shouldJoinComputationInFlightForTheSameQuery() {
+        final DataProvider<String> dataProvider = newDataProvider(ResponseCache.disabled());
+
+        final List<QueryComputation<String>> submitted = dataProvider.fetch(Set.of(QUERY));
+        final List<QueryComputation<String>> joined = dataProvider.fetch(Set.of(QUERY, OTHER_QUERY));
+
+        assertThat(joined).hasSize(2).contains(submitted.get(0));
+        verify(batchingService).submit(submitted.get(0));
+        verify(batchingService, times(2)).submit(any());
+    }
+
+    @Test
+    public void shouldSubmitNewComputationOnceComputationInFlightCompleted() {
+        final DataProvider<String> dataProvider = newDataProvider(ResponseCache.disabled());
+
+        final QueryComputation<String> completed = dataProvider.fetch(Set.of(QUERY)).get(0);
+        completed.getResponseCalculation().complete("value");
+        final QueryComputation<String> resubmitted = dataProvider.fetch(Set.of(QUERY)).get(0);
+
+        assertThat(resubmitted).isNotSameAs(completed);
+        verify(batchingService).submit(completed);
+        verify(batchingService).submit(resubmitted);
+    }
+
+    @Test
+    public void shouldServeFreshCachedResponseWithoutBatching() throws Exception {
+        final ResponseCache<String> responseCache = enabledCache();
+        responseCache.put(QUERY, "cached");
+
+        final List<QueryComputation<String>> computations =
+                newDataProvider(responseCache)
+                        .fetch(Set.of(QUERY));
+
+        assertThat(computations).hasSize(1);
+        assertThat(computations.get(0).getResponseCalculation().getNow(null)).isEqualTo("cached");
+        verifyNoInteractions(batchingService);
+    }
+
+    @Test
+    public void shouldCacheResponseOnceComputationCompleted() {
+        final ResponseCache<String> responseCache = enabledCache();
+        final DataProvider<String> dataProvider =
+                newDataProvider(responseCache);
+
+        dataProvider.fetch(Set.of(QUERY)).get(0).getResponseCalculation().complete("value");
+        final List<QueryComputation<String>> computations = dataProvider.fetch(Set.of(QUERY));
+
+        assertThat(responseCache.get(QUERY).getValue()).isEqualTo("value");
+        assertThat(computations.get(0).getResponseCalculation().getNow(null)).isEqualTo("value");
+        verify(batchingService).submit(any());
+    }
+
+    @Test
+    public void shouldServeStaleResponseAndRefreshItOnceInBackground() throws Exception {
+        final ResponseCache<String> responseCache = new ResponseCache<>(
+                new ConcurrentHashMap<>(), Duration.ofMillis(50), Duration.ofMinutes(1), Duration.ZERO, Duration.ZERO, 0
+        );
+        responseCache.put(QUERY, "stale");
+        TimeUnit.MILLISECONDS.sleep(100);
+        final DataProvider<String> dataProvider =
+                newDataProvider(responseCache);
+
+        final QueryComputation<String> first = dataProvider.fetch(Set.of(QUERY)).get(0);
+        final QueryComputation<String> second = dataProvider.fetch(Set.of(QUERY)).get(0);
+
+        assertThat(first.getResponseCalculation().getNow(null)).isEqualTo("stale");
+        assertThat(second.getResponseCalculation().getNow(null)).isEqualTo("stale");
+        final ArgumentCaptor<QueryComputation<String>> refresh = ArgumentCaptor.forClass(QueryComputation.class);
+        verify(batchingService).submit(refresh.capture());
+
+        refresh.getValue().getResponseCalculation().complete("refreshed");
+        assertThat(dataProvider.fetch(Set.of(QUERY)).get(0).getResponseCalculation().getNow(null)).isEqualTo("refreshed");
+        verifyNoMoreInteractions(batchingService);
     }
 
     @Test
     public void shouldCompleteWithNullValueIfExceptionallyCompleted() throws Exception {
         final List<QueryComputation<String>> computations =
-                new DataProvider<>(BATCH_CAPACITY, COMPUTATION_TIMEOUT_IN_SECONDS, batchBufferingService, batchProcessor)
+                newDataProvider(ResponseCache.disabled())
                         .fetch(Set.of(QUERY));
 
         assertThat(computations).hasSize(1);
@@ -78,4 +187,125 @@ public class DataProviderTest {
                         .get()
         ).isNull();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldRejectQueryOnceAdmissionLimitReached() {
+        // given
+        final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final DataProvider<String> dataProvider = new DataProvider<>(
+                COMPUTATION_TIMEOUT_IN_SECONDS,
+                batchingService,
+                ResponseCache.disabled(),
+                AdmissionLimit.fixed(1),
+                CircuitBreaker.disabled(),
+                new ProviderMetrics(meterRegistry, "track")
+        );
+        final QueryComputation<String> admitted = dataProvider.fetch(Set.of(QUERY)).get(0);
+
+        // when
+        assertThatThrownBy(() -> dataProvider.fetch(Set.of(OTHER_QUERY)))
+                .isExactlyInstanceOf(AdmissionRejectedException.class)
+                .hasMessage("Too many queries in flight, admission limit is 1");
+
+        // then
+        assertThat(dataProvider.fetch(Set.of(QUERY))).containsExactly(admitted);
+        assertThat(meterRegistry.get("aggregation.admission.rejected").counter().count()).isEqualTo(1);
+        // and once admitted query completed
+        admitted.getResponseCalculation().complete("value");
+        assertThat(dataProvider.fetch(Set.of(OTHER_QUERY))).hasSize(1);
+        verify(batchingService, times(2)).submit(any());
+    }
+
+    @Test
+    public void shouldCompleteWithNullValueWithoutBatchingWhileCircuitBreakerIsOpen() {
+        // given
+        final CircuitBreaker circuitBreaker = CircuitBreaker.of("track", 1, 1, 1, 5_000, 10_000, 1);
+        circuitBreaker.recordCall(BackendOutcome.FAILURE, 0, circuitBreaker.getGeneration());
+        final DataProvider<String> dataProvider = new DataProvider<>(
+                COMPUTATION_TIMEOUT_IN_SECONDS,
+                batchingService,
+                ResponseCache.disabled(),
+                AdmissionLimit.unlimited(),
+                circuitBreaker,
+                ProviderMetrics.disabled()
+        );
+
+        // when
+        final List<QueryComputation<String>> computations = dataProvider.fetch(QUERIES);
+
+        // then
+        assertThat(computations).hasSize(QUERIES.size())
+                .allSatisfy(computation -> assertThat(computation.getResponseHandling()).isCompletedWithValue(null));
+        verifyNoInteractions(batchingService);
+    }
+
+    @Test
+    public void shouldJoinComputationInFlightWithoutTakingHalfOpenProbe() throws Exception {
+        // given
+        final CircuitBreaker circuitBreaker = CircuitBreaker.of("track", 1, 1, 1, 5_000, 50, 1);
+        circuitBreaker.recordCall(BackendOutcome.FAILURE, 0, circuitBreaker.getGeneration());
+        TimeUnit.MILLISECONDS.sleep(100);
+        final DataProvider<String> dataProvider = new DataProvider<>(
+                COMPUTATION_TIMEOUT_IN_SECONDS,
+                batchingService,
+                ResponseCache.disabled(),
+                AdmissionLimit.unlimited(),
+                circuitBreaker,
+                ProviderMetrics.disabled()
+        );
+        final QueryComputation<String> probe = dataProvider.fetch(Set.of(QUERY)).get(0);
+
+        // when
+        final QueryComputation<String> joining = dataProvider.fetch(Set.of(QUERY)).get(0);
+
+        // then
+        assertThat(joining).isSameAs(probe);
+        assertThat(probe.getCircuitGeneration()).isEqualTo(circuitBreaker.getGeneration());
+        verify(batchingService).submit(probe);
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+    }
+
+    @Test
+    public void shouldCompleteWithNullValueWithoutCachingIfBatchingRejectedQuery() throws Exception {
+        // given
+        final ResponseCache<String> responseCache = new ResponseCache<>(
+                new ConcurrentHashMap<>(), Duration.ofMinutes(1), Duration.ZERO, Duration.ofMinutes(1), Duration.ZERO, 0
+        );
+        final DataProvider<String> dataProvider = new DataProvider<>(
+                COMPUTATION_TIMEOUT_IN_SECONDS,
+                batchingService,
+                responseCache,
+                AdmissionLimit.fixed(1),
+                CircuitBreaker.disabled(),
+                ProviderMetrics.disabled()
+        );
+        willThrow(new AdmissionRejectedException("Batching ring buffer of 16 slots is full"))
+                .willDoNothing()
+                .given(batchingService).submit(any());
+
+        // when
+        final QueryComputation<String> rejected = dataProvider.fetch(Set.of(QUERY)).get(0);
+
+        // then
+        assertThat(rejected.getResponseHandling()).isCompletedWithValue(null);
+        assertThat(responseCache.get(QUERY)).isNull();
+        // and admission is released, so the query is submitted again
+        assertThat(dataProvider.fetch(Set.of(QUERY)).get(0)).isNotSameAs(rejected);
+        verify(batchingService, times(2)).submit(any());
+    }
+
+    private DataProvider<String> newDataProvider(final ResponseCache<String> responseCache) {
+        return new DataProvider<>(
+                COMPUTATION_TIMEOUT_IN_SECONDS,
+                batchingService,
+                responseCache,
+                ProviderMetrics.disabled()
+        );
+    }
+
+    private ResponseCache<String> enabledCache() {
+        return new ResponseCache<>(
+                new ConcurrentHashMap<>(), Duration.ofMinutes(1), Duration.ZERO, Duration.ZERO, Duration.ZERO, 0
+        );
+    }
+}
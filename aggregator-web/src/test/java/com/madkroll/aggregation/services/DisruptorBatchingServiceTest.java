@@ -0,0 +1,136 @@
+package com.madkroll.aggregation.services;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DisruptorBatchingServiceTest {
+
+    private static final int BATCH_CAPACITY = 3;
+    private static final int RING_SIZE = 16;
+    private static final List<String> CHUNK_FULL = List.of("1", "2", "3");
+
+    private final BlockingQueue<List<String>> dispatchedBatches = new LinkedBlockingQueue<>();
+
+    private final CountDownLatch consumerReleased = new CountDownLatch(1);
+
+    private final DisruptorBatchingService<String> batchingService =
+            new DisruptorBatchingService<>(BATCH_CAPACITY, RING_SIZE, this::collect);
+
+    @After
+    public void tearDown() {
+        consumerReleased.countDown();
+        batchingService.shutdown();
+    }
+
+    @Test
+    public void shouldFlushIncompleteBatchImmediatelyIfNothingElsePublished() throws Exception {
+        // when
+        batchingService.submit("1");
+
+        // then
+        assertThat(dispatchedBatches.poll(1, TimeUnit.SECONDS)).containsExactly("1");
+    }
+
+    @Test
+    public void shouldFillBatchesUpToCapacityFromBacklog() throws Exception {
+        // given
+        batchingService.submit("blocking");
+        assertThat(dispatchedBatches.poll(1, TimeUnit.SECONDS)).containsExactly("blocking");
+        // consumer is blocked by the first batch, so the rest is published as a backlog
+        List.of("1", "2", "3", "4").forEach(batchingService::submit);
+
+        // when
+        consumerReleased.countDown();
+
+        // then
+        assertThat(dispatchedBatches.poll(1, TimeUnit.SECONDS)).isEqualTo(CHUNK_FULL);
+        assertThat(dispatchedBatches.poll(1, TimeUnit.SECONDS)).containsExactly("4");
+    }
+
+    @Test
+    public void shouldDispatchEachItemExactlyOnceWhenSubmittedConcurrently() throws Exception {
+        // given
+        consumerReleased.countDown();
+        final int threads = 8;
+        final int itemsPerThread = 2_000;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        // when
+        final List<Future<?>> submitting = IntStream.range(0, threads)
+                .mapToObj(
+                        thread -> executor.submit(() -> {
+                            for (int item = 0; item < itemsPerThread; item++) {
+                                // ring buffer of 16 slots fills up quickly, rejected item is submitted again
+                                // once submitting thread gave way to the handler
+                                while (!trySubmit(thread + "-" + item)) {
+                                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+                                }
+                            }
+                        })
+                )
+                .collect(Collectors.toList());
+        for (Future<?> next : submitting) {
+            next.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // then
+        final List<String> dispatchedItems = new ArrayList<>();
+        while (dispatchedItems.size() < threads * itemsPerThread) {
+            final List<String> batch = dispatchedBatches.poll(1, TimeUnit.SECONDS);
+            assertThat(batch).isNotNull();
+            assertThat(batch).hasSizeBetween(1, BATCH_CAPACITY);
+            dispatchedItems.addAll(batch);
+        }
+
+        assertThat(dispatchedItems).doesNotHaveDuplicates().hasSize(threads * itemsPerThread);
+    }
+
+    @Test
+    public void shouldRejectItemWithoutBlockingOnceRingBufferIsFull() throws Exception {
+        // given
+        batchingService.submit("blocking");
+        assertThat(dispatchedBatches.poll(1, TimeUnit.SECONDS)).containsExactly("blocking");
+
+        // when
+        // consumer is blocked by the first batch, so nothing frees slots
+        assertThatThrownBy(() -> IntStream.range(0, RING_SIZE).forEach(item -> batchingService.submit(String.valueOf(item))))
+                // then
+                .isExactlyInstanceOf(AdmissionRejectedException.class)
+                .hasMessage("Batching ring buffer of 16 slots is full");
+    }
+
+    @Test
+    public void shouldFailIfRingSizeIsNotPowerOfTwo() {
+        assertThatThrownBy(() -> new DisruptorBatchingService<String>(BATCH_CAPACITY, 10, batch -> {}))
+                .isExactlyInstanceOf(IllegalArgumentException.class);
+    }
+
+    private boolean trySubmit(final String item) {
+        try {
+            batchingService.submit(item);
+            return true;
+        } catch (AdmissionRejectedException e) {
+            return false;
+        }
+    }
+
+    private void collect(final List<String> batch) {
+        dispatchedBatches.add(List.copyOf(batch));
+        try {
+            consumerReleased.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
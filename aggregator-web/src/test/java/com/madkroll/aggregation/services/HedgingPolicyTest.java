@@ -0,0 +1,107 @@
+package com.madkroll.aggregation.services;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class HedgingPolicyTest {
+
+    @Test
+    public void shouldNotHedgeUntilEnoughLatenciesObserved() {
+        // given
+        final HedgingPolicy hedgingPolicy = HedgingPolicy.of(0.95, 100, 20, 10, 0);
+
+        // when
+        recordLatenciesInMillis(hedgingPolicy, 1, 19);
+
+        // then
+        assertThat(hedgingPolicy.delayNanos()).isNegative();
+    }
+
+    @Test
+    public void shouldHedgeByPercentileOfLatestLatencies() {
+        // given
+        final HedgingPolicy hedgingPolicy = HedgingPolicy.of(0.95, 100, 20, 10, 0);
+
+        // when
+        recordLatenciesInMillis(hedgingPolicy, 1, 100);
+
+        // then
+        assertThat(hedgingPolicy.delayNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(95));
+    }
+
+    @Test
+    public void shouldForgetLatenciesOutOfWindow() {
+        // given
+        final HedgingPolicy hedgingPolicy = HedgingPolicy.of(0.5, 10, 10, 1, 0);
+        recordLatenciesInMillis(hedgingPolicy, 1_000, 1_009);
+
+        // when
+        recordLatenciesInMillis(hedgingPolicy, 1, 10);
+
+        // then
+        assertThat(hedgingPolicy.delayNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(5));
+    }
+
+    @Test
+    public void shouldRecomputeDelayOncePerGivenLatencies() {
+        // given
+        final HedgingPolicy hedgingPolicy = HedgingPolicy.of(0.5, 10, 10, 5, 0);
+        recordLatenciesInMillis(hedgingPolicy, 1, 10);
+        final long delayNanos = hedgingPolicy.delayNanos();
+
+        // when
+        recordLatenciesInMillis(hedgingPolicy, 101, 104);
+
+        // then
+        assertThat(delayNanos).isEqualTo(TimeUnit.MILLISECONDS.toNanos(5));
+        assertThat(hedgingPolicy.delayNanos()).isEqualTo(delayNanos);
+
+        // when
+        recordLatenciesInMillis(hedgingPolicy, 105, 105);
+
+        // then
+        assertThat(hedgingPolicy.delayNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    @Test
+    public void shouldNotHedgeBeforeMinDelay() {
+        // given
+        final HedgingPolicy hedgingPolicy = HedgingPolicy.of(0.5, 10, 1, 1, 50);
+
+        // when
+        recordLatenciesInMillis(hedgingPolicy, 1, 10);
+
+        // then
+        assertThat(hedgingPolicy.delayNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void shouldNeverHedgeIfDisabled() {
+        // given
+        final HedgingPolicy hedgingPolicy = HedgingPolicy.disabled();
+
+        // when
+        recordLatenciesInMillis(hedgingPolicy, 1, 100);
+
+        // then
+        assertThat(hedgingPolicy.delayNanos()).isNegative();
+    }
+
+    @Test
+    public void shouldFailIfPercentileIsOutOfRange() {
+        assertThatThrownBy(() -> HedgingPolicy.of(1, 100, 20, 10, 0))
+                .isExactlyInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Hedging percentile must be between 0 and 1: 1.0");
+    }
+
+    private void recordLatenciesInMillis(final HedgingPolicy hedgingPolicy, final long from, final long to) {
+        LongStream.rangeClosed(from, to)
+                .map(TimeUnit.MILLISECONDS::toNanos)
+                .forEach(hedgingPolicy::recordLatency);
+    }
+}
@@ -0,0 +1,168 @@
+package com.madkroll.aggregation.services;
+
+import org.junit.After;
+import org.junit.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ReactorBatchingServiceTest {
+
+    private static final int BATCH_CAPACITY = 3;
+    private static final long BATCH_TIMEOUT_IN_MILLIS = 200;
+    private static final List<String> CHUNK_FULL = List.of("1", "2", "3");
+
+    private final BlockingQueue<List<String>> dispatchedBatches = new LinkedBlockingQueue<>();
+
+    private final ReactorBatchingService<String> batchingService =
+            new ReactorBatchingService<>(BATCH_CAPACITY, BATCH_TIMEOUT_IN_MILLIS, this::collect);
+
+    @After
+    public void tearDown() {
+        batchingService.shutdown();
+    }
+
+    @Test
+    public void shouldEmitBatchImmediatelyWhenCapacityReached() {
+        // when
+        CHUNK_FULL.forEach(batchingService::submit);
+
+        // then
+        assertThat(dispatchedBatches).containsExactly(CHUNK_FULL);
+    }
+
+    @Test
+    public void shouldEmitIncompleteBatchOnceTimeoutExceeded() throws Exception {
+        // given
+        final List<String> keepOneAvailable = CHUNK_FULL.subList(0, 2);
+
+        // when
+        keepOneAvailable.forEach(batchingService::submit);
+
+        // then
+        assertThat(dispatchedBatches).isEmpty();
+        assertThat(dispatchedBatches.poll(1, TimeUnit.SECONDS)).isEqualTo(keepOneAvailable);
+    }
+
+    @Test
+    public void shouldKeepEmittingBatchesIfProcessingFailed() throws Exception {
+        // given
+        final ReactorBatchingService<String> failingOnce = new ReactorBatchingService<>(
+                1,
+                BATCH_TIMEOUT_IN_MILLIS,
+                batch -> "fail".equals(batch.get(0)) ? Mono.error(new IllegalStateException()) : collect(batch)
+        );
+
+        // when
+        failingOnce.submit("fail");
+        failingOnce.submit("1");
+
+        // then
+        assertThat(dispatchedBatches.poll(1, TimeUnit.SECONDS)).containsExactly("1");
+        failingOnce.shutdown();
+    }
+
+    @Test
+    public void shouldEmitEachItemExactlyOnceWhenSubmittedConcurrently() throws Exception {
+        // given
+        final int threads = 8;
+        final int itemsPerThread = 2_000;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        // when
+        final List<Future<?>> submitting = IntStream.range(0, threads)
+                .mapToObj(
+                        thread -> executor.submit(() -> {
+                            for (int item = 0; item < itemsPerThread; item++) {
+                                batchingService.submit(thread + "-" + item);
+                            }
+                        })
+                )
+                .collect(Collectors.toList());
+        for (Future<?> next : submitting) {
+            next.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // then
+        final List<String> dispatchedItems = new ArrayList<>();
+        while (dispatchedItems.size() < threads * itemsPerThread) {
+            final List<String> batch = dispatchedBatches.poll(1, TimeUnit.SECONDS);
+            assertThat(batch).isNotNull();
+            assertThat(batch).hasSizeBetween(1, BATCH_CAPACITY);
+            dispatchedItems.addAll(batch);
+        }
+
+        assertThat(dispatchedItems).doesNotHaveDuplicates().hasSize(threads * itemsPerThread);
+    }
+
+    @Test
+    public void shouldKeepEmittingBatchesWhileMoreThanMaxBatchesAreInFlight() throws Exception {
+        // given
+        final int batches = 300;
+        final int maxBatchesInFlight = 256;
+        final long shortTimeoutInMillis = 2;
+        final BlockingQueue<MonoProcessor<Void>> inFlight = new LinkedBlockingQueue<>();
+        final ReactorBatchingService<String> slowProcessing = new ReactorBatchingService<>(
+                BATCH_CAPACITY,
+                shortTimeoutInMillis,
+                batch -> {
+                    collect(batch);
+                    final MonoProcessor<Void> processing = MonoProcessor.create();
+                    inFlight.add(processing);
+                    return processing;
+                }
+        );
+
+        // when
+        // every batch is sealed by timeout with single item, so none of them completes demand of its capacity
+        final List<MonoProcessor<Void>> awaiting = new ArrayList<>();
+        final List<String> dispatchedItems = new ArrayList<>();
+        for (int item = 0; item < maxBatchesInFlight; item++) {
+            slowProcessing.submit(String.valueOf(item));
+            final List<String> batch = dispatchedBatches.poll(1, TimeUnit.SECONDS);
+            assertThat(batch).containsExactly(String.valueOf(item));
+            dispatchedItems.addAll(batch);
+            awaiting.add(inFlight.poll(1, TimeUnit.SECONDS));
+        }
+        for (int item = maxBatchesInFlight; item < batches; item++) {
+            slowProcessing.submit(String.valueOf(item));
+        }
+
+        // then
+        assertThat(awaiting).hasSize(maxBatchesInFlight).doesNotContainNull();
+        awaiting.forEach(MonoProcessor::onComplete);
+
+        while (dispatchedItems.size() < batches) {
+            final List<String> batch = dispatchedBatches.poll(1, TimeUnit.SECONDS);
+            assertThat(batch).isNotNull();
+            dispatchedItems.addAll(batch);
+            final MonoProcessor<Void> processing = inFlight.poll(1, TimeUnit.SECONDS);
+            assertThat(processing).isNotNull();
+            processing.onComplete();
+        }
+
+        assertThat(dispatchedItems).doesNotHaveDuplicates().hasSize(batches);
+        slowProcessing.shutdown();
+    }
+
+    @Test
+    public void shouldFailIfCapacityIsNotPositive() {
+        assertThatThrownBy(() -> new ReactorBatchingService<String>(0, BATCH_TIMEOUT_IN_MILLIS, batch -> Mono.empty()))
+                .isExactlyInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Batch capacity must be positive: 0");
+    }
+
+    private Mono<Void> collect(final List<String> batch) {
+        dispatchedBatches.add(List.copyOf(batch));
+        return Mono.empty();
+    }
+}
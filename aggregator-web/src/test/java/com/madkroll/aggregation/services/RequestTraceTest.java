@@ -0,0 +1,105 @@
+package com.madkroll.aggregation.services;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RequestTraceTest {
+
+    private final RequestTrace trace = new RequestTrace("trace-id", System.nanoTime());
+
+    @Test
+    public void shouldRecordBreakdownOfSlowestComputation() {
+        // given
+        final QueryComputation<String> fast = completedComputation("fast", 10, 20, 30, 40);
+        final QueryComputation<String> slow = completedComputation("slow", 10_000, 20_000, 30_000, 40_000);
+
+        // when
+        trace.recordComputations("track", List.of(fast, slow));
+
+        // then
+        assertThat(trace.getSpans()).containsExactlyInAnyOrderEntriesOf(
+                Map.of(
+                        "track.linger", 10_000L,
+                        "track.queue", 10_000L,
+                        "track.backend", 10_000L,
+                        "track.fan-out", 10_000L
+                )
+        );
+    }
+
+    @Test
+    public void shouldRecordComputationServedFromCache() {
+        // given
+        final QueryComputation<String> cached =
+                new QueryComputation<>("cached", CompletableFuture.completedFuture("value"), 10);
+
+        // when
+        trace.recordComputations("track", List.of(cached));
+
+        // then
+        assertThat(trace.getSpans()).containsOnlyKeys("track.cached");
+    }
+
+    @Test
+    public void shouldRecordTimeoutOfComputationNotCompletedYet() {
+        // given
+        final QueryComputation<String> computation = new QueryComputation<>("pending", new CompletableFuture<>(), 10);
+        computation.markDispatched(computation.getCreatedAtNanos() + 10);
+
+        // when
+        trace.recordComputations("track", List.of(computation));
+
+        // then
+        assertThat(trace.getSpans()).containsOnlyKeys("track.linger", "track.timeout");
+    }
+
+    @Test
+    public void shouldRecordNothingIfNotSampled() {
+        // when
+        RequestTrace.none().record("controller", 0, 10);
+        RequestTrace.none().recordComputations("track", List.of(completedComputation("query", 10, 20, 30, 40)));
+
+        // then
+        assertThat(RequestTrace.none().isSampled()).isFalse();
+        assertThat(RequestTrace.none().getSpans()).isEmpty();
+    }
+
+    @Test
+    public void shouldSampleAllOrNoneRequests() {
+        assertThat(new RequestTracer(1).start().isSampled()).isTrue();
+        assertThat(new RequestTracer(0).start().isSampled()).isFalse();
+    }
+
+    @Test
+    public void shouldFailIfSampleRateIsOutOfRange() {
+        assertThatThrownBy(() -> new RequestTracer(1.5))
+                .isExactlyInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Sample rate must be between 0 and 1: 1.5");
+    }
+
+    /**
+     * Computation which reached every pipeline stage given nanos after it was created.
+     */
+    private QueryComputation<String> completedComputation(
+            final String query,
+            final long dispatchedAfter,
+            final long requestedAfter,
+            final long respondedAfter,
+            final long completedAfter
+    ) {
+        final QueryComputation<String> computation = new QueryComputation<>(query, new CompletableFuture<>(), 10);
+        final long createdAtNanos = computation.getCreatedAtNanos();
+        computation.markDispatched(createdAtNanos + dispatchedAfter);
+        computation.markRequested(createdAtNanos + requestedAfter);
+        computation.markResponded(createdAtNanos + respondedAfter);
+        computation.markCompleted(createdAtNanos + completedAfter);
+        computation.getResponseCalculation().complete("value");
+        return computation;
+    }
+}
@@ -0,0 +1,129 @@
+package com.madkroll.aggregation.services;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResponseCacheTest {
+
+    private static final String QUERY = "1";
+
+    @Test
+    public void shouldReturnFreshResponse() {
+        // given
+        final ResponseCache<String> responseCache = newCache(Duration.ofMinutes(1), Duration.ZERO);
+
+        // when
+        responseCache.put(QUERY, "value");
+
+        // then
+        assertThat(responseCache.get(QUERY).getValue()).isEqualTo("value");
+    }
+
+    @Test
+    public void shouldNotReturnExpiredResponse() throws Exception {
+        // given
+        final ResponseCache<String> responseCache = newCache(Duration.ofMillis(50), Duration.ZERO);
+        responseCache.put(QUERY, "value");
+
+        // when
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        // then
+        assertThat(responseCache.get(QUERY)).isNull();
+    }
+
+    @Test
+    public void shouldNotCacheMissingValueIfNegativeCachingDisabled() {
+        // given
+        final ResponseCache<String> responseCache = newCache(Duration.ofMinutes(1), Duration.ZERO);
+
+        // when
+        responseCache.put(QUERY, null);
+
+        // then
+        assertThat(responseCache.get(QUERY)).isNull();
+    }
+
+    @Test
+    public void shouldCacheMissingValueIfNegativeCachingEnabled() {
+        // given
+        final ResponseCache<String> responseCache = newCache(Duration.ofMinutes(1), Duration.ofMinutes(1));
+
+        // when
+        responseCache.put(QUERY, null);
+
+        // then
+        assertThat(responseCache.get(QUERY)).isNotNull();
+        assertThat(responseCache.get(QUERY).getValue()).isNull();
+    }
+
+    @Test
+    public void shouldCacheNothingIfDisabled() {
+        // given
+        final ResponseCache<String> responseCache = ResponseCache.disabled();
+
+        // when
+        responseCache.put(QUERY, "value");
+
+        // then
+        assertThat(responseCache.get(QUERY)).isNull();
+    }
+
+    @Test
+    public void shouldServeStaleResponseAndAskForRefresh() throws Exception {
+        // given
+        final ResponseCache<String> responseCache = new ResponseCache<>(
+                new ConcurrentHashMap<>(), Duration.ofMillis(50), Duration.ofMinutes(1), Duration.ZERO, Duration.ZERO, 0
+        );
+        responseCache.put(QUERY, "value");
+        assertThat(responseCache.needsRefresh(responseCache.get(QUERY))).isFalse();
+
+        // when
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        // then
+        final CachedResponse<String> stale = responseCache.get(QUERY);
+        assertThat(stale.getValue()).isEqualTo("value");
+        assertThat(responseCache.needsRefresh(stale)).isTrue();
+    }
+
+    @Test
+    public void shouldAskForRefreshAheadOnlyOnceResponseIsHot() {
+        // given
+        final ResponseCache<String> responseCache = new ResponseCache<>(
+                new ConcurrentHashMap<>(), Duration.ofMinutes(1), Duration.ZERO, Duration.ZERO, Duration.ofMinutes(1), 2
+        );
+        responseCache.put(QUERY, "value");
+
+        // when
+        final CachedResponse<String> firstRead = responseCache.get(QUERY);
+        final boolean refreshOnFirstRead = responseCache.needsRefresh(firstRead);
+        final CachedResponse<String> secondRead = responseCache.get(QUERY);
+
+        // then
+        assertThat(refreshOnFirstRead).isFalse();
+        assertThat(responseCache.needsRefresh(secondRead)).isTrue();
+    }
+
+    @Test
+    public void shouldKeepServedValueIfRefreshReturnedMissingValue() {
+        // given
+        final ResponseCache<String> responseCache = newCache(Duration.ofMinutes(1), Duration.ofMinutes(1));
+        responseCache.put(QUERY, "value");
+
+        // when
+        responseCache.put(QUERY, null);
+
+        // then
+        assertThat(responseCache.get(QUERY).getValue()).isEqualTo("value");
+    }
+
+    private ResponseCache<String> newCache(final Duration ttl, final Duration negativeTtl) {
+        return new ResponseCache<>(new ConcurrentHashMap<>(), ttl, Duration.ZERO, negativeTtl, Duration.ZERO, 0);
+    }
+}
@@ -0,0 +1,79 @@
+package com.madkroll.aggregation.services;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StringListValueDecoderTest {
+
+    private final StringListValueDecoder decoder = new StringListValueDecoder();
+
+    @Test
+    public void shouldDecodeArraysOfAnySize() throws Exception {
+        assertThat(decode("[]")).isEmpty();
+        assertThat(decode("[\"box\"]")).containsExactly("box");
+        assertThat(decode("[\"box\", \"pallet\"]")).containsExactly("box", "pallet");
+        assertThat(decode("[\"box\", \"pallet\", \"crate\"]")).containsExactly("box", "pallet", "crate");
+        assertThat(decode("[\"1\", \"2\", \"3\", \"4\", \"5\", \"6\", \"7\", \"8\", \"9\"]"))
+                .containsExactly("1", "2", "3", "4", "5", "6", "7", "8", "9");
+    }
+
+    @Test
+    public void shouldDecodeArrayOfKnownNumberOfElements() throws Exception {
+        // given
+        final JsonParser parser = new JsonFactory().createParser("[\"box\", \"pallet\", \"crate\"]");
+        parser.nextToken();
+
+        // when, then
+        assertThat(decoder.decode(parser, 3)).containsExactly("box", "pallet", "crate");
+    }
+
+    @Test
+    public void shouldFailIfArrayHasMoreElementsThanKnown() throws Exception {
+        // given
+        final JsonParser parser = new JsonFactory().createParser("[\"box\", \"pallet\", \"crate\"]");
+        parser.nextToken();
+
+        // when, then
+        assertThatThrownBy(() -> decoder.decode(parser, 2)).isInstanceOf(JsonParseException.class);
+    }
+
+    @Test
+    public void shouldDecodeNull() throws Exception {
+        assertThat(decode("null")).isNull();
+    }
+
+    @Test
+    public void shouldConsumeWholeArray() throws Exception {
+        // given
+        final JsonParser parser = new JsonFactory().createParser("[[\"box\", \"pallet\", \"crate\", \"box\"], \"next\"]");
+        parser.nextToken();
+        parser.nextToken();
+
+        // when
+        decoder.decode(parser);
+
+        // then
+        parser.nextToken();
+        assertThat(parser.getText()).isEqualTo("next");
+    }
+
+    @Test
+    public void shouldFailIfNotArrayOfStrings() {
+        assertThatThrownBy(() -> decode("\"box\"")).isInstanceOf(JsonParseException.class);
+        assertThatThrownBy(() -> decode("[\"box\", 1]")).isInstanceOf(JsonParseException.class);
+    }
+
+    private List<String> decode(final String json) throws IOException {
+        final JsonParser parser = new JsonFactory().createParser(json);
+        parser.nextToken();
+        return decoder.decode(parser);
+    }
+}
@@ -0,0 +1,84 @@
+package com.madkroll.aggregation.web;
+
+import com.madkroll.aggregation.dto.AggregationQuery;
+import com.madkroll.aggregation.dto.AggregationResponse;
+import com.madkroll.aggregation.services.AggregationService;
+import com.madkroll.aggregation.services.RequestTracer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AggregationBatchControllerTest {
+
+    @Mock
+    private AggregationService aggregationService;
+
+    @Captor
+    private ArgumentCaptor<List<AggregationQuery>> requests;
+
+    @Test
+    public void shouldBindJsonArrayOfRequestsAndRespondInTheSameOrder() {
+        // given
+        final Map<String, Object> track = new HashMap<>();
+        track.put("109347263", null);
+        final Map<String, Map<String, ?>> first = new LinkedHashMap<>();
+        first.put("pricing", Map.of("NL", new BigDecimal("14.242090605778")));
+        first.put("track", track);
+        given(aggregationService.computeAndMergeAll(requests.capture(), any()))
+                .willReturn(
+                        CompletableFuture.completedFuture(
+                                List.of(
+                                        new AggregationResponse(first),
+                                        new AggregationResponse(Map.of("shipments", Map.of("109347263", List.of("box")))),
+                                        new AggregationResponse(Map.of())
+                                )
+                        )
+                );
+
+        // when
+        WebTestClient
+                .bindToController(new AggregationBatchController(aggregationService, new RequestTracer(0)))
+                .build()
+                .post()
+                .uri("/aggregation/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .bodyValue("[{\"pricing\":[\"NL\"],\"track\":[\"109347263\",\"109347263\"]},{\"shipments\":[\"109347263\"]},{}]")
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody(String.class)
+                .isEqualTo(
+                        "[{\"pricing\":{\"NL\":14.242090605778},\"track\":{\"109347263\":null}},"
+                                + "{\"shipments\":{\"109347263\":[\"box\"]}},"
+                                + "{}]"
+                );
+
+        assertThat(requests.getValue())
+                .extracting(AggregationQuery::getQueries)
+                .containsExactly(
+                        Map.of("pricing", Set.of("NL"), "track", Set.of("109347263")),
+                        Map.of("shipments", Set.of("109347263")),
+                        Map.of()
+                );
+    }
+}
@@ -0,0 +1,127 @@
+package com.madkroll.aggregation.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.madkroll.aggregation.dto.AggregationResponse;
+import com.madkroll.aggregation.services.BatchingService;
+import com.madkroll.aggregation.services.CachedResponse;
+import com.madkroll.aggregation.services.DataProvider;
+import com.madkroll.aggregation.services.DataProviderRegistry;
+import com.madkroll.aggregation.services.ProviderMetrics;
+import com.madkroll.aggregation.services.ResponseCache;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class AggregationResponseWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ResponseCache<BigDecimal> pricingCache = enabledCache();
+    private final ResponseCache<List<String>> shipmentsCache = enabledCache();
+
+    private final AggregationResponseWriter writer = new AggregationResponseWriter(
+            objectMapper,
+            new DataProviderRegistry(
+                    Map.of(
+                            "pricing", newDataProvider(pricingCache),
+                            "track", newDataProvider(ResponseCache.disabled()),
+                            "shipments", newDataProvider(shipmentsCache)
+                    )
+            )
+    );
+
+    @Test
+    public void shouldWriteTheSameJsonAsObjectMapper() throws Exception {
+        // given
+        final BigDecimal cachedPrice = new BigDecimal("1E+2");
+        pricingCache.put("FR", cachedPrice);
+        final List<String> cachedShipment = List.of("envelope");
+        shipmentsCache.put("109347264", cachedShipment);
+        final Map<String, Object> track = new HashMap<>();
+        track.put("109347263", "NEW");
+        track.put("109347264", null);
+        final AggregationResponse response = response(
+                Map.of("NL", new BigDecimal("14.242090605778"), "FR", cachedPrice),
+                track,
+                Map.of("109347263", List.of("box", "pallet"), "109347264", cachedShipment)
+        );
+
+        // when
+        final String json = write(response);
+
+        // then
+        assertThat(json).isEqualTo(objectMapper.writeValueAsString(response));
+    }
+
+    @Test
+    public void shouldSerializeCachedValueOnceForEveryResponse() throws Exception {
+        // given
+        final List<String> cachedShipment = List.of("box", "pallet");
+        shipmentsCache.put("109347263", cachedShipment);
+        final CachedResponse<List<String>> cached = shipmentsCache.peek("109347263");
+        final AggregationResponse response = response(Map.of(), Map.of(), Map.of("109347263", cachedShipment));
+
+        // when
+        final String first = write(response);
+        final var serialized = cached.toJson(objectMapper.writer());
+        final String second = write(response);
+
+        // then
+        assertThat(second).isEqualTo(first).isEqualTo("{\"pricing\":{},\"track\":{},\"shipments\":{\"109347263\":[\"box\",\"pallet\"]}}");
+        assertThat(cached.toJson(objectMapper.writer())).isSameAs(serialized);
+    }
+
+    @Test
+    public void shouldNotWriteJsonOfCacheEntryNotServingTheValue() throws Exception {
+        // given
+        shipmentsCache.put("109347263", List.of("box"));
+        shipmentsCache.peek("109347263").toJson(objectMapper.writer());
+        final AggregationResponse response = response(Map.of(), Map.of(), Map.of("109347263", List.of("pallet")));
+
+        // when
+        final String json = write(response);
+
+        // then
+        assertThat(json).isEqualTo("{\"pricing\":{},\"track\":{},\"shipments\":{\"109347263\":[\"pallet\"]}}");
+    }
+
+    private String write(final AggregationResponse response) throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        writer.write(response, output);
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    private AggregationResponse response(
+            final Map<String, ?> pricing,
+            final Map<String, ?> track,
+            final Map<String, ?> shipments
+    ) {
+        final Map<String, Map<String, ?>> values = new LinkedHashMap<>();
+        values.put("pricing", pricing);
+        values.put("track", track);
+        values.put("shipments", shipments);
+        return new AggregationResponse(values);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> DataProvider<V> newDataProvider(final ResponseCache<V> responseCache) {
+        return new DataProvider<>(1, mock(BatchingService.class), responseCache, ProviderMetrics.disabled());
+    }
+
+    private static <V> ResponseCache<V> enabledCache() {
+        return new ResponseCache<>(
+                new ConcurrentHashMap<>(), Duration.ofMinutes(1), Duration.ZERO, Duration.ZERO, Duration.ZERO, 0
+        );
+    }
+}
@@ -5,27 +5,20 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.boot.test.context.TestConfiguration;
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Import;
-import org.springframework.context.annotation.Profile;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.reactive.server.WebTestClient;
-import org.springframework.web.reactive.function.client.WebClient;
 import org.testcontainers.containers.GenericContainer;
 import org.testcontainers.containers.wait.strategy.Wait;
 
 import java.time.Duration;
+import java.util.List;
 
 @RunWith(SpringRunner.class)
-@Import(AggregationWithBackendIT.AggregationTestConfiguration.class)
-@SpringBootTest(
-        properties = "spring.main.allow-bean-definition-overriding=true",
-        classes = AggregationWithBackendIT.AggregationTestConfiguration.class,
-        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT
-)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @ActiveProfiles("test")
 public class AggregationWithBackendIT {
 
@@ -38,6 +31,21 @@ public class AggregationWithBackendIT {
     @Autowired
     private AggregationController controller;
 
+    @DynamicPropertySource
+    public static void backendProperties(final DynamicPropertyRegistry registry) {
+        for (String providerName : List.of("pricing", "track", "shipments")) {
+            registry.add(
+                    "providers." + providerName + ".backend.base-url",
+                    () -> String.format(
+                            "http://%s:%d/%s",
+                            backendContainer.getHost(),
+                            backendContainer.getMappedPort(8080),
+                            providerName
+                    )
+            );
+        }
+    }
+
     @Test
     public void shouldSucceed() {
         WebTestClient
@@ -62,25 +70,4 @@ public class AggregationWithBackendIT {
                 .jsonPath("$.track").isNotEmpty()
                 .jsonPath("$.shipments").isNotEmpty();
     }
-
-    @Profile("test")
-    @TestConfiguration
-    public static class AggregationTestConfiguration {
-
-        @Bean
-        public WebClient pricingWebClient() {
-            return WebClient.builder()
-                    .baseUrl(String.format("http://%s:%d/pricing",backendContainer.getHost(), backendContainer.getMappedPort(8080))).build();
-        }
-
-        @Bean
-        public WebClient trackWebClient() {
-            return WebClient.builder().baseUrl(String.format("http://%s:%d/track",backendContainer.getHost(), backendContainer.getMappedPort(8080))).build();
-        }
-
-        @Bean
-        public WebClient shipmentsWebClient() {
-            return WebClient.builder().baseUrl(String.format("http://%s:%d/shipments",backendContainer.getHost(), backendContainer.getMappedPort(8080))).build();
-        }
-    }
-}
\ No newline at end of file
+}
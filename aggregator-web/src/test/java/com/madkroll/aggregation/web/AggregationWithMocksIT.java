@@ -8,44 +8,58 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.boot.test.context.TestConfiguration;
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Import;
-import org.springframework.context.annotation.Profile;
+import org.springframework.boot.web.server.LocalServerPort;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.reactive.server.WebTestClient;
-import org.springframework.web.reactive.function.client.WebClient;
 
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
 
 @RunWith(SpringRunner.class)
-@Import(AggregationWithMocksIT.WebMockConfiguration.class)
 @SpringBootTest(
-        properties = "spring.main.allow-bean-definition-overriding=true",
-        classes = AggregationWithMocksIT.WebMockConfiguration.class,
+        properties = {
+                "providers.pricing.backend.base-url=http://" + AggregationWithMocksIT.BACKEND_HOST + ":"
+                        + AggregationWithMocksIT.PRICING_PORT + "/pricing",
+                "providers.track.backend.base-url=http://" + AggregationWithMocksIT.BACKEND_HOST + ":"
+                        + AggregationWithMocksIT.TRACK_PORT + "/track",
+                "providers.shipments.backend.base-url=http://" + AggregationWithMocksIT.BACKEND_HOST + ":"
+                        + AggregationWithMocksIT.SHIPMENTS_PORT + "/shipments",
+                // retry of call left by previous test must not reach mocks started on the same ports by the next one
+                "providers.pricing.backend.retry-backoff-in-millis=0",
+                "providers.track.backend.retry-backoff-in-millis=0",
+                "providers.shipments.backend.retry-backoff-in-millis=0"
+        },
         webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT
 )
 @ActiveProfiles("test")
 public class AggregationWithMocksIT {
 
-    private final static String BACKEND_HOST = "localhost";
-    private final static int PRICING_PORT = 33333;
-    private final static int TRACK_PORT = 33334;
-    private final static int SHIPMENTS_PORT = 33335;
+    final static String BACKEND_HOST = "localhost";
+    final static int PRICING_PORT = 33333;
+    final static int TRACK_PORT = 33334;
+    final static int SHIPMENTS_PORT = 33335;
 
     private MockWebServer pricingMock;
     private MockWebServer trackMock;
     private MockWebServer shipmentsMock;
 
+    @LocalServerPort
+    private int port;
+
     @Autowired
     private AggregationController controller;
 
+    @Autowired
+    private AggregationStreamController streamController;
+
     @Before
     public void setup() throws IOException {
         pricingMock = new MockWebServer();
@@ -82,6 +96,61 @@ public class AggregationWithMocksIT {
                 .jsonPath("$.shipments.109347263[2]").isEqualTo("pallet");
     }
 
+    @Test
+    public void shouldWriteExactJsonThroughServerOnceServedFromCache() {
+        // pricing is cached, so the second response writes JSON memoized by its cache entry
+        mockResponse(pricingMock, "{\"DE\":9.99}");
+        mockResponse(trackMock, "{}");
+        mockResponse(trackMock, "{}");
+        mockResponse(shipmentsMock, "{\"109347265\": [\"box\"]}");
+        mockResponse(shipmentsMock, "{\"109347265\": [\"box\"]}");
+        final String expected = "{\"pricing\":{\"DE\":9.99},\"track\":{\"109347265\":null},\"shipments\":{\"109347265\":[\"box\"]}}";
+
+        for (int i = 0; i < 2; i++) {
+            WebTestClient
+                    .bindToServer()
+                    .baseUrl("http://localhost:" + port)
+                    .responseTimeout(Duration.ofSeconds(30))
+                    .build()
+                    .get()
+                    .uri("/aggregation?pricing=DE&track=109347265&shipments=109347265")
+                    .accept(MediaType.APPLICATION_JSON)
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectHeader().contentType(MediaType.APPLICATION_JSON_VALUE)
+                    .expectBody(String.class).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void shouldStreamSectionOfEveryProvider() {
+        mockResponse(pricingMock, "{\"NL\":14.242090605778}");
+        mockResponse(trackMock, "{\"109347263\": \"NEW\"}");
+        mockResponse(shipmentsMock, "{\"109347263\": [\"box\"]}");
+
+        final List<String> sections = WebTestClient
+                .bindToController(streamController)
+                .build()
+                .mutate()
+                .responseTimeout(Duration.ofSeconds(30))
+                .build()
+                .get()
+                .uri("/aggregation/stream?pricing=NL&track=109347263&shipments=109347263")
+                .accept(MediaType.APPLICATION_STREAM_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class)
+                .getResponseBody()
+                .collectList()
+                .block(Duration.ofSeconds(30));
+
+        assertThat(sections).containsExactlyInAnyOrder(
+                "{\"provider\":\"pricing\",\"values\":{\"NL\":14.242090605778}}",
+                "{\"provider\":\"track\",\"values\":{\"109347263\":\"NEW\"}}",
+                "{\"provider\":\"shipments\",\"values\":{\"109347263\":[\"box\"]}}"
+        );
+    }
+
     @Test
     public void shouldReturnDefaultJsonIfNothingRequested() {
         mockResponse(pricingMock, "");
@@ -167,25 +236,4 @@ public class AggregationWithMocksIT {
                                 .build())
                 .exchange();
     }
-
-    @Profile("test")
-    @TestConfiguration
-    public static class WebMockConfiguration {
-
-        @Bean
-        public WebClient pricingWebClient() {
-            return WebClient.builder()
-                    .baseUrl(String.format("http://%s:%d/pricing", BACKEND_HOST, PRICING_PORT)).build();
-        }
-
-        @Bean
-        public WebClient trackWebClient() {
-            return WebClient.builder().baseUrl(String.format("http://%s:%d/track", BACKEND_HOST, TRACK_PORT)).build();
-        }
-
-        @Bean
-        public WebClient shipmentsWebClient() {
-            return WebClient.builder().baseUrl(String.format("http://%s:%d/shipments", BACKEND_HOST, SHIPMENTS_PORT)).build();
-        }
-    }
 }
@@ -0,0 +1,33 @@
+package com.madkroll.aggregation.web;
+
+import org.junit.Test;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ProviderQueriesTest {
+
+    @Test
+    public void shouldSplitCommaSeparatedQueriesOfEveryProvider() {
+        // given
+        final MultiValueMap<String, String> parameters = new LinkedMultiValueMap<>();
+        parameters.put("pricing", List.of("NL, FR", "US"));
+        parameters.put("track", List.of("109347263"));
+        parameters.put("shipments", List.of(""));
+
+        // when
+        final Map<String, Set<String>> queries = ProviderQueries.of(parameters);
+
+        // then
+        assertThat(queries).containsOnly(
+                Map.entry("pricing", Set.of("NL", "FR", "US")),
+                Map.entry("track", Set.of("109347263")),
+                Map.entry("shipments", Set.of())
+        );
+    }
+}